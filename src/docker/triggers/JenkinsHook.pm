@@ -89,7 +89,8 @@ sub notifyBuild {
 		'streams' => $stream,
 		'transaction' => $transaction_num,
 		'principal' => $principal,
-		'reason' => $reason
+		'reason' => $reason,
+		'depot' => $depot
 	});
 	if(!messageSucceeded($response->status_line)) {
 		print "Invalid crumb, fetching new \n";
@@ -106,7 +107,8 @@ sub notifyBuild {
 			'streams' => $stream,
 			'transaction' => $transaction_num,
 			'principal' => $principal,
-			'reason' => $reason
+			'reason' => $reason,
+			'depot' => $depot
 		});
 		if(!messageSucceeded($response->status_line)) {
 			print "cannot notify build because: ".$response->code." ".$response->message."\n";
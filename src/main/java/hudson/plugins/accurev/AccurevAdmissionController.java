@@ -0,0 +1,300 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Launcher;
+import hudson.Proc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the {@code accurev} commands running at the same time against each server, see {@link ServerRemoteConfig}.
+ * <p>
+ * Every command waits for a permit of its server before it starts. Waiting commands are admitted by {@link Lane}, so
+ * checkouts go before event driven indexing, polling and periodic indexing; a command that waited longer than
+ * {@code starvationSeconds} no longer gives way to higher lanes. The limit of every server adapts to its latency:
+ * it grows by one every time the permits were used up without a slowdown, and shrinks by a third, at most once per
+ * round trip, when a command takes more than {@code tolerance} times the usual latency of that command or is killed.
+ * <p>
+ * The limit stays between {@code minConcurrency} and {@code maxConcurrency}, a {@code maxConcurrency} of 0 turns
+ * admission control off.
+ */
+@Extension(ordinal = -100) // After the other decorators, so they only see the time on the server
+public class AccurevAdmissionController extends AccurevLauncherDecorator {
+
+    static int MAX_CONCURRENCY = Integer.getInteger(AccurevAdmissionController.class.getName() + ".maxConcurrency", 8);
+    static int MIN_CONCURRENCY = Integer.getInteger(AccurevAdmissionController.class.getName() + ".minConcurrency", 1);
+    private static final double TOLERANCE = Double.parseDouble(
+            System.getProperty(AccurevAdmissionController.class.getName() + ".tolerance", "2.0"));
+    private static final long STARVATION_NANOS = TimeUnit.SECONDS.toNanos(
+            Long.getLong(AccurevAdmissionController.class.getName() + ".starvationSeconds", 60));
+    /**
+     * Latencies below this never count as a slowdown, short commands vary too much.
+     */
+    private static final long MIN_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final ThreadLocal<Lane> LANE = new ThreadLocal<>();
+
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public static AccurevAdmissionController get() {
+        return ExtensionList.lookupSingleton(AccurevAdmissionController.class);
+    }
+
+    /**
+     * The priority of a command, in order.
+     */
+    public enum Lane {
+        /**
+         * Checkouts of builds, and commands run outside of any lane like lightweight checkouts and form validation.
+         */
+        CHECKOUT,
+        /**
+         * Indexing triggered by an event.
+         */
+        EVENT,
+        /**
+         * Polling of jobs.
+         */
+        POLLING,
+        /**
+         * Periodic indexing.
+         */
+        INDEXING
+    }
+
+    /**
+     * Runs the commands of this thread in a lane until the returned scope is closed.
+     *
+     * @param lane the lane.
+     * @return the scope, restoring the previous lane when closed.
+     */
+    @NonNull
+    public static Scope enter(@NonNull Lane lane) {
+        Scope scope = new Scope(LANE.get());
+        LANE.set(lane);
+        return scope;
+    }
+
+    /**
+     * @return the lane of the commands of this thread.
+     */
+    @NonNull
+    public static Lane getLane() {
+        Lane lane = LANE.get();
+        return lane == null ? Lane.CHECKOUT : lane;
+    }
+
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        if (MAX_CONCURRENCY <= 0) {
+            return launcher;
+        }
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (!isAccurev(cmds)) {
+                    return super.launch(starter);
+                }
+                Limiter limiter = getLimiter(server(cmds));
+                String command = command(cmds);
+                try {
+                    limiter.acquire(getLane());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw (IOException) new InterruptedIOException("Interrupted waiting to run accurev " + command).initCause(e);
+                }
+                long start = System.nanoTime();
+                try {
+                    return new AdmittedProc(super.launch(starter), limiter, command, start);
+                } catch (IOException | RuntimeException e) {
+                    limiter.release(command, start, System.nanoTime() - start, false);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    @NonNull
+    Limiter getLimiter(@NonNull String server) {
+        return limiters.computeIfAbsent(server, k -> new Limiter());
+    }
+
+    /**
+     * Writes the limit, running and waiting commands of every server as text, in the Prometheus exposition format.
+     *
+     * @param w the writer.
+     */
+    public void write(@NonNull PrintWriter w) {
+        for (Map.Entry<String, Limiter> e : new TreeMap<>(limiters).entrySet()) {
+            String labels = "server=\"" + e.getKey() + "\"";
+            Limiter limiter = e.getValue();
+            synchronized (limiter) {
+                w.println("accurev_admission_limit{" + labels + "} " + limiter.getLimit());
+                w.println("accurev_admission_running{" + labels + "} " + limiter.running);
+                for (Lane lane : Lane.values()) {
+                    w.println("accurev_admission_waiting{" + labels + ",lane=\"" + lane.name().toLowerCase(Locale.ENGLISH) + "\"} "
+                            + limiter.waiting[lane.ordinal()]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the previous lane of the thread.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Lane previous;
+
+        private Scope(Lane previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                LANE.remove();
+            } else {
+                LANE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The permits of one server, with an additive increase, multiplicative decrease limit.
+     */
+    static final class Limiter {
+        private double limit = MAX_CONCURRENCY;
+        private int running;
+        private final int[] waiting = new int[Lane.values().length];
+        /**
+         * The usual latency of every command, biased towards the fastest runs.
+         */
+        private final Map<String, Double> baselines = new HashMap<>();
+        private long lastDecrease = System.nanoTime();
+
+        synchronized int getLimit() {
+            return Math.max(MIN_CONCURRENCY, (int) limit);
+        }
+
+        synchronized int getRunning() {
+            return running;
+        }
+
+        synchronized int getWaiting(Lane lane) {
+            return waiting[lane.ordinal()];
+        }
+
+        synchronized void acquire(Lane lane) throws InterruptedException {
+            long since = System.nanoTime();
+            waiting[lane.ordinal()]++;
+            boolean admitted = false;
+            try {
+                while (true) {
+                    long waited = System.nanoTime() - since;
+                    boolean starved = waited >= STARVATION_NANOS;
+                    if (running < getLimit() && (starved || !higherWaiting(lane))) {
+                        break;
+                    }
+                    if (starved) {
+                        wait();
+                    } else {
+                        TimeUnit.NANOSECONDS.timedWait(this, STARVATION_NANOS - waited);
+                    }
+                }
+                running++;
+                admitted = true;
+            } finally {
+                waiting[lane.ordinal()]--;
+                if (!admitted) {
+                    // Lower lanes may have been waiting for this one
+                    notifyAll();
+                }
+            }
+        }
+
+        private boolean higherWaiting(Lane lane) {
+            for (int i = 0; i < lane.ordinal(); i++) {
+                if (waiting[i] > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void release(String command, long start, long nanos, boolean killed) {
+            boolean saturated = running >= getLimit();
+            running--;
+            Double baseline = baselines.get(command);
+            boolean slow = killed || baseline != null && nanos > MIN_LATENCY_NANOS && nanos > TOLERANCE * baseline;
+            if (slow) {
+                // Commands started before the last decrease saw the old load, only shrink once per round trip
+                if (start - lastDecrease > 0) {
+                    limit = Math.max(MIN_CONCURRENCY, limit * 2 / 3);
+                    lastDecrease = System.nanoTime();
+                }
+            } else if (saturated) {
+                limit = Math.min(MAX_CONCURRENCY, limit + 1 / limit);
+            }
+            if (!killed) {
+                baselines.put(command, baseline == null ? nanos
+                        : baseline + (nanos < baseline ? 0.5 : 0.05) * (nanos - baseline));
+            }
+            notifyAll();
+        }
+    }
+
+    private static final class AdmittedProc extends ForwardingProc {
+        private final Limiter limiter;
+        private final String command;
+        private final long start;
+        private boolean released;
+
+        private AdmittedProc(Proc proc, Limiter limiter, String command, long start) {
+            super(proc);
+            this.limiter = limiter;
+            this.command = command;
+            this.start = start;
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            try {
+                proc.kill();
+            } finally {
+                release(true);
+            }
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            try {
+                return proc.join();
+            } finally {
+                release(false);
+            }
+        }
+
+        private void release(boolean killed) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            limiter.release(command, start, System.nanoTime() - start, killed);
+        }
+    }
+}
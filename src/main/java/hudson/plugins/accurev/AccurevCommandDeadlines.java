@@ -0,0 +1,218 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Kills {@code accurev} commands that run longer than the deadline of their {@link Category}, so a hung server or
+ * network does not block polling, indexing or an executor forever.
+ * <p>
+ * The deadline starts once the command was admitted, see {@link AccurevAdmissionController}. A command past its
+ * deadline is killed and {@link Proc#join()} fails with an {@link IOException} naming the command, the server and the
+ * system property that sets the deadline, e.g. {@code hudson.plugins.accurev.AccurevCommandDeadlines.querySeconds}.
+ * A deadline of 0 turns it off for the category.
+ */
+@Extension(ordinal = -200) // Outside of the admission controller, so a timeout counts as a slowdown of the server
+public class AccurevCommandDeadlines extends AccurevLauncherDecorator {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevCommandDeadlines.class.getName());
+
+    private transient ScheduledExecutorService scheduler;
+
+    /**
+     * The kinds of commands, by how long they may take.
+     */
+    public enum Category {
+        /**
+         * Logging in and out and server information.
+         */
+        SESSION(60, "login", "logout", "info", "secinfo"),
+        /**
+         * Streams, depots, history and other metadata.
+         */
+        QUERY(600),
+        /**
+         * Listing and reading elements.
+         */
+        CONTENT(600, "stat", "cat", "files", "diff"),
+        /**
+         * Populating and updating workspaces, which can take long for big streams.
+         */
+        POPULATE(3600, "pop", "update", "co", "mkws", "chws", "rmws", "reactivate");
+
+        private final long defaultSeconds;
+        private final Set<String> commands;
+
+        Category(long defaultSeconds, String... commands) {
+            this.defaultSeconds = defaultSeconds;
+            this.commands = new HashSet<>(Arrays.asList(commands));
+        }
+
+        /**
+         * @return the name of the system property setting the deadline.
+         */
+        @NonNull
+        public String getProperty() {
+            return AccurevCommandDeadlines.class.getName() + "." + name().toLowerCase(Locale.ENGLISH) + "Seconds";
+        }
+
+        /**
+         * @return the deadline in seconds, 0 for none.
+         */
+        public long getSeconds() {
+            return Long.getLong(getProperty(), defaultSeconds);
+        }
+
+        /**
+         * @param command the command, see {@link AccurevLauncherDecorator#command(List)}.
+         * @return the category of the command.
+         */
+        @NonNull
+        public static Category of(@NonNull String command) {
+            for (Category category : values()) {
+                if (category.commands.contains(command)) {
+                    return category;
+                }
+            }
+            return QUERY;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (!isAccurev(cmds)) {
+                    return super.launch(starter);
+                }
+                String command = command(cmds);
+                Category category = Category.of(command);
+                long seconds = category.getSeconds();
+                if (seconds <= 0) {
+                    return super.launch(starter);
+                }
+                DeadlineProc proc = new DeadlineProc(super.launch(starter), command, server(cmds),
+                        category, seconds);
+                proc.timeout = getScheduler().schedule(proc::expire, seconds, TimeUnit.SECONDS);
+                return proc;
+            }
+        };
+    }
+
+    /**
+     * @return the scheduler expiring the deadlines, separate from {@link jenkins.util.Timer} so killing commands does
+     * not wait behind other periodic work. Deadlines of finished commands are removed right away, as most commands
+     * finish long before their deadline.
+     */
+    synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "AccurevCommandDeadlines"));
+            pool.setRemoveOnCancelPolicy(true);
+            scheduler = pool;
+        }
+        return scheduler;
+    }
+
+    synchronized void shutdownScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Terminator
+    public static void shutdown() {
+        AccurevCommandDeadlines deadlines = ExtensionList.lookup(AccurevCommandDeadlines.class)
+                .get(AccurevCommandDeadlines.class);
+        if (deadlines != null) {
+            deadlines.shutdownScheduler();
+        }
+    }
+
+    private static final class DeadlineProc extends ForwardingProc {
+        private final String command;
+        private final String server;
+        private final Category category;
+        private final long seconds;
+        private volatile ScheduledFuture<?> timeout;
+        private volatile boolean expired;
+
+        private DeadlineProc(Proc proc, String command, String server, Category category, long seconds) {
+            super(proc);
+            this.command = command;
+            this.server = server;
+            this.category = category;
+            this.seconds = seconds;
+        }
+
+        private void expire() {
+            expired = true;
+            LOGGER.log(Level.WARNING, "Killing accurev {0} on {1}, it did not finish within {2} seconds",
+                    new Object[]{command, server, seconds});
+            try {
+                proc.kill();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to kill accurev " + command, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private IOException timedOut(Throwable cause) {
+            return new IOException("accurev " + command + " on " + server + " did not finish within " + seconds
+                    + " seconds and was killed, set -D" + category.getProperty() + " to change the deadline", cause);
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            cancel();
+            proc.kill();
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            int exitCode;
+            try {
+                exitCode = proc.join();
+            } catch (IOException e) {
+                throw expired ? timedOut(e) : e;
+            } finally {
+                cancel();
+            }
+            if (expired) {
+                throw timedOut(null);
+            }
+            return exitCode;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package hudson.plugins.accurev;
+
+import com.codahale.metrics.MetricRegistry;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Launcher;
+import hudson.Proc;
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latency, error and output size metrics of every {@code accurev} command run by the plugin, per command and server.
+ * <p>
+ * Commands are measured by decorating the launchers of the plugin, see {@link AccurevLauncherDecorator}, from their
+ * start to the end of {@link Proc#join()}. Latencies go into histograms with exponential buckets from 1ms to about a
+ * minute. The metrics are shown as plain text at {@code /accurev/metrics}, and also recorded in the registry of the
+ * Metrics plugin when it is installed, as {@code accurev.command.<command>.<server>.*}.
+ */
+@Extension
+public class AccurevCommandMetrics extends AccurevLauncherDecorator {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevCommandMetrics.class.getName());
+    /**
+     * Upper bounds of the latency buckets in milliseconds, the last bucket takes everything above.
+     */
+    static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile Boolean metricsPlugin;
+
+    public static AccurevCommandMetrics get() {
+        return ExtensionList.lookupSingleton(AccurevCommandMetrics.class);
+    }
+
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (!isAccurev(cmds)) {
+                    return super.launch(starter);
+                }
+                String command = command(cmds);
+                String server = server(cmds);
+                CountingOutputStream counter = null;
+                OutputStream out = starter.stdout();
+                if (out != null) {
+                    counter = new CountingOutputStream(out);
+                    starter.stdout(counter);
+                }
+                long start = System.nanoTime();
+                Proc proc;
+                try {
+                    proc = super.launch(starter);
+                } catch (IOException | RuntimeException e) {
+                    record(command, server, System.nanoTime() - start, 0, true);
+                    throw e;
+                }
+                return new MeteredProc(proc, command, server, start, counter);
+            }
+        };
+    }
+
+    /**
+     * Records a command.
+     *
+     * @param command the command.
+     * @param server  the server.
+     * @param nanos   the latency.
+     * @param bytes   the size of the output.
+     * @param error   whether the command failed.
+     */
+    public void record(@NonNull String command, @NonNull String server, long nanos, long bytes, boolean error) {
+        stats.computeIfAbsent(command + '|' + server, k -> new Stats()).record(nanos, bytes, error);
+        if (isMetricsPluginInstalled()) {
+            try {
+                MetricsBridge.record(command, server, nanos, bytes, error);
+            } catch (LinkageError e) {
+                metricsPlugin = false;
+                LOGGER.log(Level.FINE, "Metrics plugin is not usable", e);
+            }
+        }
+    }
+
+    private boolean isMetricsPluginInstalled() {
+        Boolean installed = metricsPlugin;
+        if (installed == null) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            installed = jenkins != null && jenkins.getPlugin("metrics") != null;
+            metricsPlugin = installed;
+        }
+        return installed;
+    }
+
+    /**
+     * @return a snapshot of the statistics by {@code command|server}, in order.
+     */
+    @NonNull
+    public Map<String, Stats> getStats() {
+        return new TreeMap<>(stats);
+    }
+
+    /**
+     * Writes the statistics as text, one line per command, server and value, in the Prometheus exposition format.
+     *
+     * @param w the writer.
+     */
+    public void write(@NonNull PrintWriter w) {
+        for (Map.Entry<String, Stats> e : getStats().entrySet()) {
+            String[] key = e.getKey().split("\\|", 2);
+            String labels = "command=\"" + key[0] + "\",server=\"" + key[1] + "\"";
+            Stats s = e.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += s.buckets.get(i);
+                w.println("accurev_command_duration_seconds_bucket{" + labels + ",le=\"" + BUCKETS[i] / 1000.0 + "\"} " + cumulative);
+            }
+            w.println("accurev_command_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} " + s.count.get());
+            w.println("accurev_command_duration_seconds_sum{" + labels + "} " + s.nanos.get() / 1e9);
+            w.println("accurev_command_duration_seconds_count{" + labels + "} " + s.count.get());
+            w.println("accurev_command_errors_total{" + labels + "} " + s.errors.get());
+            w.println("accurev_command_output_bytes_total{" + labels + "} " + s.bytes.get());
+        }
+    }
+
+    /**
+     * The statistics of one command on one server.
+     */
+    public static final class Stats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+
+        void record(long nanos, long bytes, boolean error) {
+            count.incrementAndGet();
+            this.nanos.addAndGet(nanos);
+            this.bytes.addAndGet(bytes);
+            if (error) {
+                errors.incrementAndGet();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while (i < BUCKETS.length && millis > BUCKETS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getTotalNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * @param i the bucket, {@code BUCKETS.length} for the overflow bucket.
+         * @return the commands taking at most the bucket's bound and more than the previous one.
+         */
+        public long getBucket(int i) {
+            return buckets.get(i);
+        }
+    }
+
+    private final class MeteredProc extends ForwardingProc {
+        private final String command;
+        private final String server;
+        private final long start;
+        private final CountingOutputStream stdout;
+        private CountingInputStream pipe;
+        private boolean recorded;
+
+        private MeteredProc(Proc proc, String command, String server, long start, CountingOutputStream stdout) {
+            super(proc);
+            this.command = command;
+            this.server = server;
+            this.start = start;
+            this.stdout = stdout;
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            proc.kill();
+            done(true);
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            int exitCode;
+            try {
+                exitCode = proc.join();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                done(true);
+                throw e;
+            }
+            done(exitCode != 0);
+            return exitCode;
+        }
+
+        private synchronized void done(boolean error) {
+            if (recorded) {
+                return;
+            }
+            recorded = true;
+            long bytes = stdout != null ? stdout.getByteCount() : pipe != null ? pipe.getByteCount() : 0;
+            record(command, server, System.nanoTime() - start, bytes, error);
+        }
+
+        @Override
+        public synchronized InputStream getStdout() {
+            if (pipe == null && proc.getStdout() != null) {
+                pipe = new CountingInputStream(proc.getStdout());
+            }
+            return pipe;
+        }
+    }
+
+    /**
+     * Only loaded when the Metrics plugin is installed.
+     */
+    private static final class MetricsBridge {
+        static void record(String command, String server, long nanos, long bytes, boolean error) {
+            MetricRegistry registry = Metrics.metricRegistry();
+            String prefix = MetricRegistry.name("accurev", "command", command.replace(' ', '_'), server);
+            registry.timer(prefix + ".duration").update(nanos, TimeUnit.NANOSECONDS);
+            registry.histogram(prefix + ".output").update(bytes);
+            if (error) {
+                registry.counter(prefix + ".errors").inc();
+            }
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package hudson.plugins.accurev;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.Serializable;
 import java.net.URI;
+import java.util.Objects;
 
 public class AccurevCommitPayload implements Serializable {
     private final String transaction;
     private final String stream;
     private final URI url;
+    @CheckForNull
+    private final String depot;
 
     public AccurevCommitPayload(@Nonnull URI url, @Nonnull String stream, @Nonnull String transaction) {
+        this(url, null, stream, transaction);
+    }
+
+    public AccurevCommitPayload(@Nonnull URI url, @CheckForNull String depot, @Nonnull String stream, @Nonnull String transaction) {
         this.url = url;
+        this.depot = depot;
         this.stream = stream;
         this.transaction = transaction;
     }
@@ -27,6 +36,14 @@ public class AccurevCommitPayload implements Serializable {
         return url;
     }
 
+    /**
+     * @return the depot of the stream, or {@code null} if the notification did not include it.
+     */
+    @CheckForNull
+    public String getDepot() {
+        return depot;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -44,12 +61,16 @@ public class AccurevCommitPayload implements Serializable {
         if (!stream.equals(that.stream)) {
             return false;
         }
+        if (!Objects.equals(depot, that.depot)) {
+            return false;
+        }
         return transaction.equals(that.transaction);
     }
 
     @Override
     public int hashCode() {
         int result = url.hashCode();
+        result = 31 * result + Objects.hashCode(depot);
         result = 31 * result + stream.hashCode();
         result = 31 * result + transaction.hashCode();
         return result;
@@ -59,6 +80,7 @@ public class AccurevCommitPayload implements Serializable {
     public String toString() {
         return "AccurevCommitPayload{" +
                 "url='" + url+ '\'' +
+                ", depot='" + depot + '\'' +
                 ", branch='" + stream + '\'' +
                 ", commitId='" + transaction + '\'' +
                 '}';
@@ -0,0 +1,294 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.listeners.ItemListener;
+import hudson.util.AtomicFileWriter;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMEventListener;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append only journal of the webhook events accepted by {@link AccurevStatus}.
+ * <p>
+ * Every event is written to the journal before it is dispatched and marked consumed once every
+ * {@link SCMEventListener} has seen it. Events still pending when Jenkins stops are replayed after the next start,
+ * once the {@link AccurevStreamIndex} has been built, so only the missed notifications have to be processed again.
+ * <p>
+ * The journal is a text file with one record per line, {@code A} records hold an event and {@code C} records mark an
+ * event as consumed. It is compacted to the pending events on startup and whenever most of it has been consumed.
+ */
+@Extension(ordinal = -100)
+public class AccurevEventJournal extends ItemListener {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevEventJournal.class.getName());
+    private static final int COMPACT_THRESHOLD = Integer.getInteger(AccurevEventJournal.class.getName() + ".compactThreshold", 1000);
+
+    private final Map<Long, Event> pending = new LinkedHashMap<>();
+    private List<Event> recovered = Collections.emptyList();
+    private boolean loaded;
+    private long nextId = 1;
+    private int consumed;
+
+    public static AccurevEventJournal get() {
+        return ExtensionList.lookupSingleton(AccurevEventJournal.class);
+    }
+
+    protected File getFile() {
+        return new File(Jenkins.get().getRootDir(), "accurev-events.journal");
+    }
+
+    /**
+     * Records an event before it is dispatched.
+     *
+     * @param reason  the reason of the notification.
+     * @param payload the payload.
+     * @param origin  the origin of the notification.
+     * @return the recorded event.
+     */
+    @NonNull
+    public synchronized Event append(@NonNull Reason reason, @NonNull AccurevCommitPayload payload, @CheckForNull String origin) {
+        load();
+        Event event = new Event(nextId++, reason, payload, origin);
+        pending.put(event.getId(), event);
+        write(event.toRecord(), true);
+        return event;
+    }
+
+    /**
+     * Marks an event as dispatched, it will not be replayed anymore.
+     *
+     * @param id the id of the event.
+     */
+    public synchronized void consume(long id) {
+        load();
+        if (pending.remove(id) == null) {
+            return;
+        }
+        consumed++;
+        if (consumed >= COMPACT_THRESHOLD && consumed > pending.size()) {
+            compact();
+        } else {
+            write("C\t" + id, false);
+        }
+    }
+
+    /**
+     * @return the events which have not been consumed yet.
+     */
+    @NonNull
+    public synchronized List<Event> getPending() {
+        load();
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Replays the events left over from the previous run. Called after {@link AccurevStreamIndex#onLoaded()} because
+     * of the lower ordinal, so the replayed events resolve against a complete index.
+     */
+    @Override
+    public void onLoaded() {
+        List<Event> events;
+        synchronized (this) {
+            load();
+            events = recovered;
+            recovered = Collections.emptyList();
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Replaying {0} Accurev events missed before the restart", events.size());
+        Timer.get().submit(() -> {
+            for (Event event : events) {
+                AccurevStatus.dispatch(event, new ArrayList<>());
+            }
+        });
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File file = getFile();
+        if (file.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    read(line);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+            }
+        }
+        recovered = new ArrayList<>(pending.values());
+        compact();
+    }
+
+    private void read(String line) {
+        String[] fields = line.split("\t", -1);
+        try {
+            long id = Long.parseLong(fields[1]);
+            nextId = Math.max(nextId, id + 1);
+            if (fields[0].equals("C") && fields.length == 2) {
+                pending.remove(id);
+            } else if (fields[0].equals("A") && fields.length == 8) {
+                Event event = new Event(id, Reason.valueOf(fields[2]), new AccurevCommitPayload(
+                        new URI(unescape(fields[3])),
+                        Util.fixEmpty(unescape(fields[4])),
+                        unescape(fields[5]),
+                        unescape(fields[6])), Util.fixEmpty(unescape(fields[7])));
+                pending.put(id, event);
+            } else {
+                LOGGER.log(Level.FINE, "Skipping malformed journal record {0}", line);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | URISyntaxException e) {
+            // A record cut short by a crash, nothing to replay for it
+            LOGGER.log(Level.FINE, "Skipping malformed journal record " + line, e);
+        }
+    }
+
+    private void compact() {
+        consumed = 0;
+        File file = getFile();
+        try {
+            AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Event event : pending.values()) {
+                    writer.write(event.toRecord());
+                    writer.write('\n');
+                }
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, e);
+        }
+    }
+
+    private void write(String record, boolean sync) {
+        File file = getFile();
+        try (FileOutputStream out = new FileOutputStream(file, true);
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(record);
+            writer.write('\n');
+            writer.flush();
+            if (sync) {
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to " + file, e);
+        }
+    }
+
+    static String escape(@CheckForNull String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String value) {
+        StringBuilder b = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char n = value.charAt(++i);
+                b.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * A journaled webhook event.
+     */
+    public static final class Event {
+        private final long id;
+        private final Reason reason;
+        private final AccurevCommitPayload payload;
+        @CheckForNull
+        private final String origin;
+
+        Event(long id, @NonNull Reason reason, @NonNull AccurevCommitPayload payload, @CheckForNull String origin) {
+            this.id = id;
+            this.reason = reason;
+            this.payload = payload;
+            this.origin = origin;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @NonNull
+        public Reason getReason() {
+            return reason;
+        }
+
+        @NonNull
+        public AccurevCommitPayload getPayload() {
+            return payload;
+        }
+
+        @CheckForNull
+        public String getOrigin() {
+            return origin;
+        }
+
+        String toRecord() {
+            return "A\t" + id + "\t" + reason.name()
+                    + "\t" + escape(payload.getUrl().toString())
+                    + "\t" + escape(payload.getDepot())
+                    + "\t" + escape(payload.getStream())
+                    + "\t" + escape(payload.getTransaction())
+                    + "\t" + escape(origin);
+        }
+
+        @Override
+        public String toString() {
+            return "Event{id=" + id + ", reason=" + reason + ", payload=" + payload + '}';
+        }
+    }
+
+    /**
+     * Marks the events as consumed after every other listener handled them.
+     */
+    @Extension(ordinal = -1000)
+    public static class ConsumedListener extends SCMEventListener {
+        @Override
+        public void onSCMHeadEvent(SCMHeadEvent<?> event) {
+            if (event instanceof AccurevSCMHeadEvent) {
+                long id = ((AccurevSCMHeadEvent<?>) event).getJournalId();
+                if (id > 0) {
+                    get().consume(id);
+                }
+            }
+        }
+    }
+}
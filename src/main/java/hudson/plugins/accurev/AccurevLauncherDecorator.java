@@ -0,0 +1,135 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.Launcher;
+import hudson.Proc;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Decorates every launcher the plugin runs the {@code accurev} CLI with.
+ * <p>
+ * Unlike {@link hudson.LauncherDecorator}, which only applies to the launchers of nodes, this also covers the local
+ * launchers used on the controller for indexing, polling and the lightweight file system. Implementations can wrap,
+ * trace or replace the CLI, e.g. with a fake server for load tests.
+ */
+public abstract class AccurevLauncherDecorator implements ExtensionPoint {
+
+    /**
+     * @param launcher the launcher.
+     * @return the decorated launcher, or the given one.
+     */
+    @NonNull
+    public abstract Launcher decorate(@NonNull Launcher launcher);
+
+    /**
+     * Applies all decorators.
+     *
+     * @param launcher the launcher.
+     * @return the decorated launcher.
+     */
+    @NonNull
+    public static Launcher decorateAll(@NonNull Launcher launcher) {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return launcher;
+        }
+        for (AccurevLauncherDecorator decorator : ExtensionList.lookup(AccurevLauncherDecorator.class)) {
+            launcher = decorator.decorate(launcher);
+        }
+        return launcher;
+    }
+
+    /**
+     * @param cmds the command line.
+     * @return whether the command line runs the {@code accurev} CLI.
+     */
+    protected static boolean isAccurev(@NonNull List<String> cmds) {
+        return !cmds.isEmpty() && new File(cmds.get(0)).getName().matches("accurev(\\.exe)?");
+    }
+
+    /**
+     * @param cmds the command line of the {@code accurev} CLI.
+     * @return the command, including the kind of object for {@code show}, e.g. {@code show streams}.
+     */
+    @NonNull
+    protected static String command(@NonNull List<String> cmds) {
+        String command = null;
+        for (int i = 1; i < cmds.size(); i++) {
+            String arg = cmds.get(i);
+            if (arg.equals("-H")) {
+                i++;
+            } else if (!arg.startsWith("-")) {
+                if (command == null) {
+                    command = arg;
+                    if (!command.equals("show")) {
+                        return command;
+                    }
+                } else {
+                    return command + " " + arg;
+                }
+            } else if (command != null && arg.length() == 2 && !arg.equals("-r") && i + 1 < cmds.size()) {
+                // Skip the value of options of show, like -p depot
+                i++;
+            }
+        }
+        return command == null ? "unknown" : command;
+    }
+
+    /**
+     * @param cmds the command line of the {@code accurev} CLI.
+     * @return the server given with {@code -H}, or {@code default} for the server of the session.
+     */
+    @NonNull
+    protected static String server(@NonNull List<String> cmds) {
+        int i = cmds.indexOf("-H");
+        return i > 0 && i + 1 < cmds.size() ? AccurevStreamIndex.serverKey(cmds.get(i + 1)) : "default";
+    }
+
+    /**
+     * A process forwarding everything to the decorated one, decorators override what they observe.
+     */
+    protected abstract static class ForwardingProc extends Proc {
+        protected final Proc proc;
+
+        protected ForwardingProc(@NonNull Proc proc) {
+            this.proc = proc;
+        }
+
+        @Override
+        public boolean isAlive() throws IOException, InterruptedException {
+            return proc.isAlive();
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            proc.kill();
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            return proc.join();
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return proc.getStdout();
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return proc.getStderr();
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return proc.getStdin();
+        }
+    }
+}
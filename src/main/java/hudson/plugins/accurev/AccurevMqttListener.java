@@ -0,0 +1,293 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.init.Terminator;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import javax.annotation.CheckForNull;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives change notifications over MQTT, as an alternative to {@link AccurevStatus#doNotifyCommit}.
+ * <p>
+ * The broker and topic are configured globally on {@link AccurevSCM.DescriptorImpl}. Every message is a JSON object
+ * with the same fields as a notifyCommit request, {@code host}, {@code port}, {@code stream}, and optionally
+ * {@code depot}, {@code transaction} and {@code reason}, and is handed to the same event path.
+ * <p>
+ * One persistent connection is kept per controller. A first connect that fails, e.g. because the broker is down when
+ * Jenkins starts, is retried with a backoff doubling up to {@code maxRetrySeconds}; after that the client reconnects
+ * by itself. When a shared subscription group is configured the topic is
+ * subscribed as {@code $share/<group>/<topic>}, so the broker spreads the messages over all controllers of the group.
+ * A message redelivered by the broker is only handled once: a message is skipped when it repeats the last message of
+ * its stream within {@code dedupMillis}. Any other message of the stream in between, like a delete between two creates,
+ * or a repeat after that window is handled again.
+ */
+@Extension(ordinal = -200)
+public class AccurevMqttListener extends ItemListener implements MqttCallbackExtended {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevMqttListener.class.getName());
+    private static final int DEDUP_SIZE = Integer.getInteger(AccurevMqttListener.class.getName() + ".dedupSize", 10000);
+    static long DEDUP_MILLIS = Long.getLong(AccurevMqttListener.class.getName() + ".dedupMillis", TimeUnit.MINUTES.toMillis(1));
+    static long MIN_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static long MAX_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong(AccurevMqttListener.class.getName() + ".maxRetrySeconds", 300));
+
+    @CheckForNull
+    private MqttAsyncClient client;
+    @CheckForNull
+    private String subscription;
+    /**
+     * The last message of every stream and when it arrived.
+     */
+    private final Map<String, Seen> seen = new LinkedHashMap<String, Seen>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Seen> eldest) {
+            return size() > DEDUP_SIZE;
+        }
+    };
+
+    public static AccurevMqttListener get() {
+        return ExtensionList.lookupSingleton(AccurevMqttListener.class);
+    }
+
+    /**
+     * Connects once the jobs are loaded, so the first messages resolve against a complete {@link AccurevStreamIndex}.
+     */
+    @Override
+    public void onLoaded() {
+        restart();
+    }
+
+    /**
+     * (Re)connects with the current global configuration, or disconnects if no broker is configured.
+     */
+    public synchronized void restart() {
+        stop();
+        AccurevSCM.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(AccurevSCM.DescriptorImpl.class);
+        String broker = descriptor == null ? null : Util.fixEmptyAndTrim(descriptor.getMqttBroker());
+        if (broker == null) {
+            return;
+        }
+        String topic = StringUtils.defaultIfBlank(descriptor.getMqttTopic(), AccurevSCM.DescriptorImpl.DEFAULT_MQTT_TOPIC).trim();
+        String group = Util.fixEmptyAndTrim(descriptor.getMqttSharedGroup());
+        subscription = group == null ? topic : "$share/" + group + "/" + topic;
+        try {
+            MqttAsyncClient c = new MqttAsyncClient(broker.contains("://") ? broker : "tcp://" + broker,
+                    clientId(), new MemoryPersistence());
+            c.setCallback(this);
+            MqttConnectOptions options = new MqttConnectOptions();
+            // A persistent session keeps the messages published while Jenkins is disconnected
+            options.setCleanSession(false);
+            options.setAutomaticReconnect(true);
+            client = c;
+            connect(c, options, 0);
+            LOGGER.log(Level.INFO, "Listening for Accurev events on {0} {1}", new Object[]{broker, subscription});
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to connect to MQTT broker " + broker, e);
+        }
+    }
+
+    /**
+     * Starts a connect, retrying it after a failure until it succeeds or the client is replaced. Automatic reconnects
+     * only take over once the first connect succeeded.
+     *
+     * @param c       the client.
+     * @param options the options.
+     * @param backoff the delay before this attempt, 0 for the first one.
+     */
+    private void connect(MqttAsyncClient c, MqttConnectOptions options, long backoff) {
+        try {
+            c.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    // connectComplete subscribes
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    retry(c, options, backoff, e);
+                }
+            });
+        } catch (MqttException | RuntimeException e) {
+            retry(c, options, backoff, e);
+        }
+    }
+
+    private void retry(MqttAsyncClient c, MqttConnectOptions options, long backoff, Throwable e) {
+        synchronized (this) {
+            if (client != c) {
+                // Restarted or stopped meanwhile
+                return;
+            }
+        }
+        long next = backoff == 0 ? MIN_RETRY_MILLIS : Math.min(MAX_RETRY_MILLIS, backoff * 2);
+        LOGGER.log(Level.WARNING, "Failed to connect to MQTT broker " + c.getServerURI() + ", retrying in "
+                + TimeUnit.MILLISECONDS.toSeconds(next) + " seconds", e);
+        Timer.get().schedule(() -> {
+            synchronized (this) {
+                if (client != c) {
+                    return;
+                }
+            }
+            connect(c, options, next);
+        }, next, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Disconnects from the broker.
+     */
+    public synchronized void stop() {
+        MqttAsyncClient c = client;
+        client = null;
+        if (c == null) {
+            return;
+        }
+        try {
+            if (c.isConnected()) {
+                c.disconnect().waitForCompletion(10000);
+            }
+            c.close(true);
+        } catch (MqttException e) {
+            LOGGER.log(Level.FINE, "Failed to disconnect from " + c.getServerURI(), e);
+        }
+    }
+
+    /**
+     * The client id has to be stable across restarts for the broker to keep the session.
+     */
+    private static String clientId() {
+        return "jenkins-" + Util.getDigestOf(Jenkins.get().getLegacyInstanceId()).substring(0, 15);
+    }
+
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        MqttAsyncClient c = client;
+        String s = subscription;
+        if (c == null || s == null) {
+            return;
+        }
+        try {
+            c.subscribe(s, 1);
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to subscribe to " + s + " on " + serverURI, e);
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        LOGGER.log(Level.FINE, "Lost the connection to the MQTT broker, reconnecting", cause);
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        String error = handle(new String(message.getPayload(), StandardCharsets.UTF_8), "mqtt:" + topic);
+        if (error != null) {
+            LOGGER.log(Level.WARNING, "Ignoring Accurev event on {0}: {1}", new Object[]{topic, error});
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    /**
+     * Handles a single message.
+     *
+     * @param payload the message.
+     * @param origin  the origin of the event.
+     * @return {@code null} if the event was handled or was a duplicate, otherwise the reason it was rejected.
+     */
+    @CheckForNull
+    String handle(@NonNull String payload, @NonNull String origin) {
+        JSONObject json;
+        try {
+            json = JSONObject.fromObject(payload);
+        } catch (JSONException e) {
+            return "Message is not a JSON object";
+        }
+        String host = Util.fixEmptyAndTrim(json.optString("host", null));
+        String port = Util.fixEmptyAndTrim(json.optString("port", null));
+        String depot = Util.fixEmptyAndTrim(json.optString("depot", null));
+        String stream = Util.fixEmptyAndTrim(json.optString("stream", null));
+        String transaction = Util.fixEmptyAndTrim(json.optString("transaction", null));
+        String reason = Util.fixEmptyAndTrim(json.optString("reason", "updated"));
+        if (host == null || port == null) {
+            return "No host or port given";
+        }
+        URI uri;
+        Reason r;
+        try {
+            uri = new URI(host + ":" + port);
+            r = Reason.valueOf(reason.toUpperCase());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return "Illegal host, port or reason: " + e.getMessage();
+        }
+        String streamKey = AccurevStreamIndex.serverKey(uri.toString()) + "|" + depot + "|" + stream;
+        Seen message = new Seen(transaction + "|" + r, System.currentTimeMillis());
+        Seen previous;
+        synchronized (seen) {
+            previous = seen.get(streamKey);
+            if (previous != null && previous.key.equals(message.key) && message.time - previous.time < DEDUP_MILLIS) {
+                LOGGER.log(Level.FINE, "Skipping duplicate Accurev event {0}|{1}", new Object[]{streamKey, message.key});
+                return null;
+            }
+            seen.put(streamKey, message);
+        }
+        String error = AccurevStatus.fireEvent(uri, depot, stream, transaction, r, origin, new ArrayList<>());
+        if (error != null) {
+            synchronized (seen) {
+                if (seen.get(streamKey) == message) {
+                    if (previous == null) {
+                        seen.remove(streamKey);
+                    } else {
+                        seen.put(streamKey, previous);
+                    }
+                }
+            }
+        }
+        return error;
+    }
+
+    private static final class Seen {
+        private final String key;
+        private final long time;
+
+        private Seen(String key, long time) {
+            this.key = key;
+            this.time = time;
+        }
+    }
+
+    @Terminator
+    public static void shutdown() {
+        AccurevMqttListener listener = ExtensionList.lookup(ItemListener.class).get(AccurevMqttListener.class);
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package hudson.plugins.accurev;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shares the result of identical read-only queries, like {@code fetchStream} or {@code getUpdatesFromAncestors}, that
+ * are issued at about the same time, e.g. by all the jobs triggered by one promote.
+ * <p>
+ * The first caller runs the query while the others wait for it, and the parsed result is kept for {@code ttlMillis}
+ * for late arrivals. Failures are shared with the waiting callers but not kept. Results are shared between callers
+ * so they must not be modified. All results are dropped when an event arrives, see {@link AccurevStatus}, so a query
+ * issued after a promote always sees it, even when an identical query started before the event is still running.
+ */
+public final class AccurevQueryCoalescer {
+
+    private static final long TTL_MILLIS = Long.getLong(AccurevQueryCoalescer.class.getName() + ".ttlMillis", 2000);
+
+    private static final Cache<String, Optional<Object>> RESULTS = CacheBuilder.newBuilder()
+            .expireAfterWrite(TTL_MILLIS, TimeUnit.MILLISECONDS)
+            .maximumSize(Long.getLong(AccurevQueryCoalescer.class.getName() + ".maxEntries", 10000))
+            .build();
+
+    /**
+     * Part of every key, so queries issued after {@link #invalidateAll()} never join a query started before it.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private AccurevQueryCoalescer() {
+    }
+
+    /**
+     * @param scm the SCM.
+     * @return the server and credentials the queries of the SCM run with, queries are only shared within that scope.
+     */
+    @NonNull
+    public static String scope(@NonNull AccurevSCM scm) {
+        List<ServerRemoteConfig> configs = scm.getServerRemoteConfigs();
+        if (configs.isEmpty()) {
+            return "";
+        }
+        ServerRemoteConfig config = configs.get(0);
+        return AccurevStreamIndex.serverKey(config.getUrl()) + '|' + config.getCredentialsId();
+    }
+
+    /**
+     * Runs a query, or waits for the identical query in flight, or returns its result if it completed recently.
+     *
+     * @param scope the server and credentials, see {@link #scope(AccurevSCM)}.
+     * @param query the name of the query, e.g. {@code fetchStream}.
+     * @param call  runs the query.
+     * @param args  the arguments that make up the query together with its name.
+     * @param <T>   the type of the result.
+     * @return the result.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T query(@NonNull String scope, @NonNull String query, @NonNull Supplier<T> call, Object... args) {
+        List<Object> key = Arrays.asList(args);
+        try {
+            return (T) RESULTS.get(GENERATION.get() + "|" + scope + '|' + query + key, () -> Optional.<Object>ofNullable(call.get())).orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new IllegalStateException("Failed to run " + query + " " + key, e.getCause());
+        }
+    }
+
+    /**
+     * Drops all results, later queries run again.
+     */
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+        RESULTS.invalidateAll();
+    }
+}
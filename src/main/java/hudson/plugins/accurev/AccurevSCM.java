@@ -18,11 +18,13 @@ import hudson.model.queue.Tasks;
 import hudson.plugins.accurev.browsers.AccurevWeb;
 import hudson.plugins.accurev.extensions.AccurevSCMExtension;
 import hudson.plugins.accurev.extensions.AccurevSCMExtensionDescriptor;
+import hudson.plugins.accurev.extensions.impl.TriggerChildren;
 import hudson.plugins.accurev.util.*;
 import hudson.plugins.accurev.util.Build;
 import hudson.scm.*;
 import hudson.security.ACL;
 import hudson.util.DescribableList;
+import jenkins.model.Jenkins;
 import jenkins.plugins.accurev.AccurevSCMHead;
 import jenkins.plugins.accurevclient.Accurev;
 import jenkins.plugins.accurevclient.AccurevClient;
@@ -82,6 +84,7 @@ public class AccurevSCM extends SCM implements Serializable {
     private static final String ACCUREV_TRANSACTION = "ACCUREV_TRANSACTION";
     private static final String ACCUREV_SERVER = "ACCUREV_SERVER";
     private static final String ACCUREV_PORT = "ACCUREV_PORT";
+    private static final String ACCUREV_CONTENT_BUILT_BY = "ACCUREV_CONTENT_BUILT_BY";
 
     public AccurevSCM(String source) {
         this.source = source;
@@ -174,20 +177,26 @@ public class AccurevSCM extends SCM implements Serializable {
             return BUILD_NOW;
         }
 
-        final Node node = AccurevUtils.workspaceToNode(workspace);
-        EnvVars environment = project.getEnvironment(node, listener);
-        Accurev accurev = Accurev.with(listener, environment, launcher);
-        AccurevClient client = accurev.getClient();
-        final BuildData buildData = getBuildData(lastBuild);
+        try (AccurevTracer.Span span = AccurevTracer.span("polling");
+             AccurevAdmissionController.Scope lane = AccurevAdmissionController.enter(AccurevAdmissionController.Lane.POLLING)) {
+            span.attr("job", project.getFullName()).attr("stream", getSingleStream());
+            final Node node = AccurevUtils.workspaceToNode(workspace);
+            EnvVars environment = project.getEnvironment(node, listener);
+            Accurev accurev = Accurev.with(listener, environment, AccurevLauncherDecorator.decorateAll(launcher));
+            AccurevClient client = accurev.getClient();
+            final BuildData buildData = getBuildData(lastBuild);
 
-        Collection<AccurevTransaction> candidateTransactions = getBuildChooser().getCandidateTransactions(true, getSingleStream(), ac, listener, buildData);
+            Collection<AccurevTransaction> candidateTransactions = getBuildChooser().getCandidateTransactions(true, getSingleStream(), ac, listener, buildData);
+            span.attr("candidates", candidateTransactions.size());
 
-        for(AccurevTransaction transaction : candidateTransactions) {
-            if (!isTransactionExcluded(client, transaction, listener, buildData)) {
-                return BUILD_NOW;
+            for(AccurevTransaction transaction : candidateTransactions) {
+                if (!isTransactionExcluded(client, transaction, listener, buildData)) {
+                    span.attr("transaction", transaction.getId());
+                    return BUILD_NOW;
+                }
             }
+            return NO_CHANGES;
         }
-        return NO_CHANGES;
     }
 
     private boolean isTransactionExcluded(AccurevClient client, AccurevTransaction transaction, TaskListener listener, BuildData buildData) throws IOException, InterruptedException  {
@@ -216,7 +225,7 @@ public class AccurevSCM extends SCM implements Serializable {
             workspace.mkdirs();
         }
 
-        Accurev accurev = Accurev.with(listener, environment, launcher).at(workspace).on(getServerRemoteConfigs().get(0).getUrl());
+        Accurev accurev = Accurev.with(listener, environment, AccurevLauncherDecorator.decorateAll(launcher)).at(workspace).on(getServerRemoteConfigs().get(0).getUrl());
         this.ac = accurev.getClient();
 
         for (ServerRemoteConfig src : getServerRemoteConfigs()) {
@@ -267,6 +276,15 @@ public class AccurevSCM extends SCM implements Serializable {
     @Override
     public void checkout(Run<?, ?> build, Launcher launcher, FilePath workspace, TaskListener listener, File changelogFile, SCMRevisionState baseline)
             throws IOException, InterruptedException {
+        try (AccurevTracer.Span span = AccurevTracer.span("checkout");
+             AccurevAdmissionController.Scope lane = AccurevAdmissionController.enter(AccurevAdmissionController.Lane.CHECKOUT)) {
+            span.attr("build", build.getExternalizableId()).attr("stream", getSingleStream());
+            doCheckout(build, launcher, workspace, listener, changelogFile);
+        }
+    }
+
+    private void doCheckout(Run<?, ?> build, Launcher launcher, FilePath workspace, TaskListener listener, File changelogFile)
+            throws IOException, InterruptedException {
 
         BuildData prevBuildData = getBuildData(build.getPreviousBuild());
         BuildData buildData = copyBuildData(build.getPreviousBuild());
@@ -280,6 +298,7 @@ public class AccurevSCM extends SCM implements Serializable {
 
         retrieveChanges(build, ac, listener);
         Build transactionToBuild = determineTransactionToBuild(build, buildData, environment, ac, listener);
+        AccurevTracer.annotate("transaction", transactionToBuild.transaction.getId());
         List<BuildData> actions = build.getActions(BuildData.class);
 
         if(!actions.isEmpty()){
@@ -287,6 +306,10 @@ public class AccurevSCM extends SCM implements Serializable {
         }
         build.addAction(buildData);
 
+        for (AccurevSCMExtension ext : this.getExtensions()) {
+            ext.beforeCheckout(this, build, launcher, workspace, environment, ac, listener, transactionToBuild);
+        }
+
         Set files = new HashSet();
         files.add(".");
         ac.update();
@@ -332,6 +355,10 @@ public class AccurevSCM extends SCM implements Serializable {
                 env.put(ACCUREV_SERVER, config.getHost());
                 env.put(ACCUREV_PORT, config.getPort());
             }
+            ContentFingerprintAction fingerprint = build.getAction(ContentFingerprintAction.class);
+            if (fingerprint != null && fingerprint.getBuiltBy() != null) {
+                env.put(ACCUREV_CONTENT_BUILT_BY, fingerprint.getBuiltBy());
+            }
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "failed to load environment" + e.getMessage());
         }
@@ -362,6 +389,13 @@ public class AccurevSCM extends SCM implements Serializable {
     }
 
 
+    private AccurevStream fetchStream(AccurevClient ac) {
+        String depot = getStreams().get(0).getDepot();
+        String stream = getSingleStream();
+        return AccurevQueryCoalescer.query(AccurevQueryCoalescer.scope(this), "fetchStream",
+                () -> ac.fetchStream(depot, stream), depot, stream);
+    }
+
     private Build determineTransactionToBuild(Run build, BuildData buildData, EnvVars environment, AccurevClient ac, TaskListener listener) {
         /**
         * Determines the TransactionID that needs to be built
@@ -384,16 +418,18 @@ public class AccurevSCM extends SCM implements Serializable {
             }
         }
 
+        // The candidates may be shared with other jobs by the coalescer, the build data keeps its own copy
+        Collection<AccurevTransaction> updates = Collections.unmodifiableList(newArrayList(candidates));
         Build transToBuild;
         if(!candidates.isEmpty()) {
             AccurevTransaction markedTransaction = candidates.stream().max(Comparator.comparing(i -> i.getId())).get();
-            AccurevStream stream = ac.fetchStream(getStreams().get(0).getDepot(), getSingleStream());
-            transToBuild = new Build(stream, markedTransaction,  candidates, build.getNumber(), null);
+            AccurevStream stream = fetchStream(ac);
+            transToBuild = new Build(stream, markedTransaction,  updates, build.getNumber(), null);
             buildData.saveBuild(transToBuild);
         }else{
             AccurevTransaction markedTransaction = buildData.lastBuild == null ? null : buildData.lastBuild.transaction;
-            AccurevStream stream = ac.fetchStream(getStreams().get(0).getDepot(), getSingleStream());
-            transToBuild = new Build(stream, markedTransaction,  candidates, build.getNumber(), null);
+            AccurevStream stream = fetchStream(ac);
+            transToBuild = new Build(stream, markedTransaction,  updates, build.getNumber(), null);
             buildData.saveBuild(transToBuild);
         }
 
@@ -410,35 +446,61 @@ public class AccurevSCM extends SCM implements Serializable {
         }
         if(!affectedStreams.isEmpty()) {
             ItemGroup folder = build.getParent().getParent();
-            if (folder instanceof WorkflowMultiBranchProject) {
-                WorkflowMultiBranchProject project = (WorkflowMultiBranchProject) folder;
-                // For all workflow jobs do a potential trigger of item if it hasn't already been triggered
-                project.allItems().forEach(obj -> {
-                      if(obj instanceof WorkflowJob) {
-                          WorkflowJob job = (WorkflowJob) obj;
-                          AccurevSCM typicalSCM = (AccurevSCM) job.getTypicalSCM();
-                          assert typicalSCM != null;
-                          StreamSpec streamSpec = typicalSCM.streams.get(0);
-
-                          // Find a potential match for our stream / depot combo
-                          Optional<AccurevStream> hit = affectedStreams.stream().filter(o -> o.getName().equals(streamSpec.getName()) && o.getDepotName().equals(o.getDepotName())).findFirst();
-
-                          // If we have a match, it means that there exists a stream in the MultiBranchProject with that name
-                          if(hit.isPresent()) {
-                              Optional upStreamCause = build.getCauses().stream().filter(x -> x.getClass().equals(Cause.UpstreamCause.class)).findFirst();
-                              // If an upStreamCause is present in this build, it means that we were triggered from a parent stream so no need to double trigger a potential build
-                              if(!upStreamCause.isPresent()) {
-                                  job.scheduleBuild(new Cause.UpstreamCause(build));
-                              }
-                          }
-                      }
-                });
+            // If an upStreamCause is present in this build, it means that we were triggered from a parent stream so no need to double trigger a potential build
+            boolean upStreamCause = build.getCauses().stream().anyMatch(x -> x.getClass().equals(Cause.UpstreamCause.class));
+            if (folder instanceof WorkflowMultiBranchProject && !upStreamCause) {
+                scheduleChildren((WorkflowMultiBranchProject) folder, build, transToBuild.marked, affectedStreams);
             }
         }
         return transToBuild;
 
     }
 
+    /**
+     * Schedules the branch jobs of the project building one of the affected streams. The jobs are looked up by
+     * stream and depot in the {@link AccurevStreamIndex} and handed to the {@link ChildStreamScheduler} with their
+     * depth below the built stream, so they are built parent first.
+     */
+    private void scheduleChildren(WorkflowMultiBranchProject project, Run build, AccurevStream parent, Collection<AccurevStream> affectedStreams) {
+        AccurevStreamIndex index = AccurevStreamIndex.get();
+        Map<String, AccurevStream> byName = new HashMap<>();
+        for (AccurevStream stream : affectedStreams) {
+            byName.put(stream.getName(), stream);
+        }
+        Map<Job<?, ?>, Integer> children = new LinkedHashMap<>();
+        for (AccurevStream stream : affectedStreams) {
+            int depth = depth(stream, parent.getName(), byName);
+            for (ServerRemoteConfig config : getServerRemoteConfigs()) {
+                for (String name : index.getChildJobs(project, config.getUrl(), stream.getDepotName(), stream.getName())) {
+                    WorkflowJob job = Jenkins.get().getItemByFullName(name, WorkflowJob.class);
+                    if (job != null && job != build.getParent()) {
+                        children.merge(job, depth, Math::min);
+                    }
+                }
+            }
+        }
+        if (children.isEmpty()) {
+            return;
+        }
+        TriggerChildren trigger = getExtensions().get(TriggerChildren.class);
+        ChildStreamScheduler.get().submit(build, children,
+                trigger == null ? TriggerChildren.DEFAULT_QUIET_PERIOD : trigger.getQuietPeriod(),
+                trigger == null ? 0 : trigger.getMaxInFlight());
+    }
+
+    /**
+     * Number of levels between a stream and the built stream, following the basis of the affected streams.
+     */
+    private static int depth(AccurevStream stream, String root, Map<String, AccurevStream> byName) {
+        int depth = 1;
+        String basis = stream.getBasisName();
+        while (basis != null && !basis.equals(root) && byName.containsKey(basis) && depth <= byName.size()) {
+            depth++;
+            basis = byName.get(basis).getBasisName();
+        }
+        return depth;
+    }
+
     @Nonnull
     @Override
     public String getKey() {
@@ -509,7 +571,7 @@ public class AccurevSCM extends SCM implements Serializable {
         }
     }
 
-    private BuildData getBuildData(Run<?, ?> build) {
+    BuildData getBuildData(Run<?, ?> build) {
         BuildData buildData = null;
         while (build != null) {
             List<BuildData> buildDataList = build.getActions(BuildData.class);
@@ -554,11 +616,49 @@ public class AccurevSCM extends SCM implements Serializable {
     @Extension
     public static final class DescriptorImpl extends SCMDescriptor<AccurevSCM> {
 
+        public static final String DEFAULT_MQTT_TOPIC = "accurev/events/#";
+
+        private String mqttBroker;
+        private String mqttTopic;
+        private String mqttSharedGroup;
+
         public DescriptorImpl() {
             super(AccurevSCM.class, AccurevRepositoryBrowser.class);
             load();
         }
 
+        /**
+         * @return the MQTT broker to receive change notifications from, or {@code null} to only use webhooks.
+         */
+        @CheckForNull
+        public String getMqttBroker() {
+            return mqttBroker;
+        }
+
+        public void setMqttBroker(String mqttBroker) {
+            this.mqttBroker = Util.fixEmptyAndTrim(mqttBroker);
+        }
+
+        public String getMqttTopic() {
+            return mqttTopic == null ? DEFAULT_MQTT_TOPIC : mqttTopic;
+        }
+
+        public void setMqttTopic(String mqttTopic) {
+            this.mqttTopic = Util.fixEmptyAndTrim(mqttTopic);
+        }
+
+        /**
+         * @return the shared subscription group, or {@code null} to subscribe to the topic directly.
+         */
+        @CheckForNull
+        public String getMqttSharedGroup() {
+            return mqttSharedGroup;
+        }
+
+        public void setMqttSharedGroup(String mqttSharedGroup) {
+            this.mqttSharedGroup = Util.fixEmptyAndTrim(mqttSharedGroup);
+        }
+
 
 
         @Override
@@ -585,6 +685,7 @@ public class AccurevSCM extends SCM implements Serializable {
         public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
             req.bindJSON(this, json);
             save();
+            AccurevMqttListener.get().restart();
             return true;
         }
     }
@@ -10,22 +10,34 @@ import jenkins.plugins.accurev.traits.TopStreamDiscoveryTrait;
 import jenkins.scm.api.*;
 import jenkins.scm.api.trait.SCMSourceTrait;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class AccurevSCMHeadEvent<T> extends SCMHeadEvent<AccurevCommitPayload> {
     private final AccurevCommitPayload payload;
     private final Type type;
+    private final long journalId;
+    private transient volatile Set<String> matchingSources;
 
 
     public AccurevSCMHeadEvent(Type type, AccurevCommitPayload payload, String origin) {
+        this(type, payload, origin, -1);
+    }
+
+    public AccurevSCMHeadEvent(Type type, AccurevCommitPayload payload, String origin, long journalId) {
         super(type, payload, origin);
         this.payload = payload;
         this.type = type;
+        this.journalId = journalId;
+    }
+
+    /**
+     * @return the id of the event in the {@link AccurevEventJournal}, or {@code -1} if it was not journaled.
+     */
+    public long getJournalId() {
+        return journalId;
     }
 
     @NonNull
@@ -52,36 +64,37 @@ public class AccurevSCMHeadEvent<T> extends SCMHeadEvent<AccurevCommitPayload> {
     public Map<SCMHead, SCMRevision> heads(@NonNull SCMSource scmSource) {
         if (scmSource instanceof AccurevSCMSource) {
             AccurevSCMSource accurevSCMSource = (AccurevSCMSource) scmSource;
-            String remote = accurevSCMSource.getRemote();
-            if (remote != null) {
-                try {
-                    if (AccurevStatus.looselyMatches(new URI(remote), payload.getUrl())) {
-                        if(accurevSCMSource.getOwner() != null && type.equals(Type.UPDATED)) {
-                            if (AccurevStatus.looselyMatches(accurevSCMSource.getOwner().getAllJobs(), payload.getStream())) {
-                                System.out.println("Sending a head event to start building with updated for stream: " + payload.getStream());
-                                AccurevSCMHead head = new AccurevSCMHead(payload.getStream());
-                                AccurevSCMRevision revision = new AccurevSCMRevision(head, Long.parseLong(payload.getTransaction()));
-                                head.setHash(Long.parseLong(payload.getTransaction()));
-                                return Collections.<SCMHead, SCMRevision>singletonMap(head, revision);
-                            }
-                        }
-                        else if (type.equals(Type.CREATED)) {
-                            System.out.println("Sending a head event to start building in else block for stream " + payload.getStream());
-                            AccurevSCMHead head = new AccurevSCMHead(payload.getStream());
-                            AccurevSCMRevision revision = new AccurevSCMRevision(head, Long.parseLong(payload.getTransaction()));
-                            head.setHash(Long.parseLong(payload.getTransaction()));
-
-                            return Collections.<SCMHead, SCMRevision>singletonMap(head, revision);
-                        }
+            if (isSameServer(accurevSCMSource)) {
+                if(accurevSCMSource.getOwner() != null && type.equals(Type.UPDATED)) {
+                    if (AccurevStreamIndex.get().hasChildJob(accurevSCMSource.getOwner(), payload.getUrl().toString(),
+                            accurevSCMSource.getDepot(), payload.getStream())) {
+                        System.out.println("Sending a head event to start building with updated for stream: " + payload.getStream());
+                        AccurevSCMHead head = new AccurevSCMHead(payload.getStream());
+                        AccurevSCMRevision revision = new AccurevSCMRevision(head, Long.parseLong(payload.getTransaction()));
+                        head.setHash(Long.parseLong(payload.getTransaction()));
+                        return Collections.<SCMHead, SCMRevision>singletonMap(head, revision);
                     }
-                } catch (URISyntaxException e) {
-                    e.printStackTrace();
+                }
+                else if (type.equals(Type.CREATED)) {
+                    System.out.println("Sending a head event to start building in else block for stream " + payload.getStream());
+                    AccurevSCMHead head = new AccurevSCMHead(payload.getStream());
+                    AccurevSCMRevision revision = new AccurevSCMRevision(head, Long.parseLong(payload.getTransaction()));
+                    head.setHash(Long.parseLong(payload.getTransaction()));
+
+                    return Collections.<SCMHead, SCMRevision>singletonMap(head, revision);
                 }
             }
         }
         return Collections.emptyMap();
     }
 
+    private boolean isSameServer(AccurevSCMSource source) {
+        String depot = payload.getDepot();
+        String sourceDepot = source.getDepot();
+        return AccurevStreamIndex.serverKey(source.getRemote()).equals(AccurevStreamIndex.serverKey(payload.getUrl().toString()))
+                && (depot == null || sourceDepot == null || sourceDepot.isEmpty() || depot.equals(sourceDepot));
+    }
+
     @Override
     public boolean isMatch(@NonNull SCM scm) {
         if (scm instanceof AccurevSCM) {
@@ -96,8 +109,24 @@ public class AccurevSCMHeadEvent<T> extends SCMHeadEvent<AccurevCommitPayload> {
         return false;
     }
 
+    /**
+     * Only sources indexed for the server and depot of the event match, everything else is rejected by a set lookup.
+     */
     @Override
     public boolean isMatch(@NonNull SCMSource source) {
-        return super.isMatch(source);
+        if (!(source instanceof AccurevSCMSource)) {
+            return false;
+        }
+        String ref = AccurevStreamIndex.sourceRef(source);
+        return ref != null && getMatchingSources().contains(ref);
+    }
+
+    private Set<String> getMatchingSources() {
+        Set<String> sources = matchingSources;
+        if (sources == null) {
+            sources = AccurevStreamIndex.get().getSources(payload.getUrl().toString(), payload.getDepot());
+            matchingSources = sources;
+        }
+        return sources;
     }
 }
@@ -3,15 +3,21 @@ package hudson.plugins.accurev;
 import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 import hudson.Extension;
+import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.Util;
 import hudson.model.*;
 import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMEvent;
 import jenkins.scm.api.SCMHeadEvent;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import org.kohsuke.stapler.*;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.annotation.CheckForNull;
 import javax.servlet.ServletException;
@@ -23,6 +29,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,6 +67,20 @@ public class AccurevStatus implements UnprotectedRootAction {
         return "accurev";
     }
 
+    /**
+     * Shows the {@link AccurevCommandMetrics} and {@link AccurevAdmissionController} state as plain text, for administrators and scrapers.
+     */
+    public HttpResponse doMetrics() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return (req, rsp, node) -> {
+            rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+            PrintWriter w = rsp.getWriter();
+            AccurevCommandMetrics.get().write(w);
+            AccurevAdmissionController.get().write(w);
+            w.flush();
+        };
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -91,15 +112,11 @@ public class AccurevStatus implements UnprotectedRootAction {
         lastPort = port;
         lastStreams = streams;
         lastPrincipal = principal;
-        if (reason != null){
-            lastReason = Reason.valueOf(reason.toUpperCase());
-        }
+        lastReason = parseReason(reason);
         URI uri;
 
-        LOGGER.log(Level.FINE, "Received hook from : " + host + ", stream: " + streams);
-
-        System.out.println( "Received hook from : " + host + ", stream: " + streams + ", at transaction " + transaction + " , for reason " + reason);
-
+        LOGGER.log(Level.FINE, "Received hook from : {0}, stream: {1}, at transaction {2}, for reason {3}",
+                new Object[]{host, streams, transaction, reason});
 
         try {
             uri = new URI(host + ":" + port);
@@ -117,40 +134,30 @@ public class AccurevStatus implements UnprotectedRootAction {
         String origin = SCMEvent.originOf(request);
 
         if (streamsArray.length > 0) {
+            // Every stream in the request shares the transaction and reason, handle all of them before answering
+            List<String> rejected = new ArrayList<>();
+            List<ResponseContributor> contributors = new ArrayList<>();
+            String depot = Util.fixEmptyAndTrim(request.getParameter("depot"));
             for (String stream : streamsArray) {
-                switch (lastReason != null ? lastReason : Reason.NONE ) {
-                    case CREATED:
-                        if (StringUtils.isNotBlank(stream) ) {
-                            System.out.println("notify created action for " + stream);
-                            transaction = transaction.isEmpty() ? transaction : "1";
-                            SCMHeadEvent.fireNow(new AccurevSCMHeadEvent<String>(
-                                    SCMEvent.Type.CREATED, new AccurevCommitPayload(uri, stream, transaction), origin));
-                            return HttpResponses.ok();
-                        }
-                    case UPDATED:
-                        if (StringUtils.isNotBlank(stream) && StringUtils.isNotBlank(transaction)) {
-
-                            System.out.println("notify update action for " + stream);
-
-
-                            SCMHeadEvent.fireNow(new AccurevSCMHeadEvent<String>(
-                                    SCMEvent.Type.UPDATED, new AccurevCommitPayload(uri, stream, transaction), origin));
-                            return HttpResponses.ok();
-                        }
-                    case DELETED:
-                        if (StringUtils.isNotBlank(stream) ) {
-
-                            System.out.println("notify delete action for " + stream);
-
-                            transaction = transaction.isEmpty() ? transaction : "1";
-                            SCMHeadEvent.fireNow(new AccurevSCMHeadEvent<String>(
-                                    SCMEvent.Type.REMOVED, new AccurevCommitPayload(uri, stream, transaction), origin));
-                            return HttpResponses.ok();
-                        }
-                    default:
-                        return  HttpResponses.error(408,"No suitable Command found");
+                String error = fireEvent(uri, depot, stream.trim(), transaction, lastReason, origin, contributors);
+                if (error != null) {
+                    rejected.add(stream + ": " + error);
                 }
             }
+            if (!rejected.isEmpty()) {
+                return HttpResponses.error(408, StringUtils.join(rejected, ", "));
+            }
+            return (staplerRequest, staplerResponse, node) -> {
+                staplerResponse.setStatus(SC_OK);
+                staplerResponse.setContentType("text/plain;charset=UTF-8");
+                for (ResponseContributor c : contributors) {
+                    c.addHeaders(staplerRequest, staplerResponse);
+                }
+                PrintWriter w = staplerResponse.getWriter();
+                for (ResponseContributor c : contributors) {
+                    c.writeBody(staplerRequest, staplerResponse, w);
+                }
+            };
         }
         return (staplerRequest, staplerResponse, o) -> {
             staplerResponse.setStatus(SC_OK);
@@ -159,6 +166,179 @@ public class AccurevStatus implements UnprotectedRootAction {
         };
     }
 
+    /**
+     * Batch variant of {@link #doNotifyCommit}. The request body is a JSON array of entries, each with a
+     * {@code stream} and optionally a {@code depot}, {@code transaction} and {@code reason}. All entries are handled in one pass
+     * and the response is a JSON array holding the status of every entry, in the order they were received.
+     *
+     * @param request the request.
+     * @param host    the Accurev server host.
+     * @param port    the Accurev server port.
+     * @return the per entry status.
+     * @throws IOException if the request body could not be read.
+     */
+    @RequirePOST
+    public HttpResponse doNotifyCommits(StaplerRequest request, @QueryParameter(required = true) String host,
+                                        @QueryParameter(required = true) String port) throws IOException {
+        lastHost = host;
+        lastPort = port;
+        URI uri;
+        try {
+            uri = new URI(host + ":" + port);
+        } catch (URISyntaxException e) {
+            return HttpResponses.error(SC_BAD_REQUEST, new Exception("Illegal Host: " + host + " and port: " + port, e));
+        }
+
+        JSONArray entries;
+        try {
+            entries = JSONArray.fromObject(IOUtils.toString(request.getReader()));
+        } catch (JSONException e) {
+            return HttpResponses.error(SC_BAD_REQUEST, new Exception("Request body must be a JSON array of events", e));
+        }
+
+        LOGGER.log(Level.FINE, "Received batch hook from : " + host + " with " + entries.size() + " entries");
+
+        String origin = SCMEvent.originOf(request);
+        List<String> streams = new ArrayList<>();
+        JSONArray statuses = new JSONArray();
+        for (Object o : entries) {
+            JSONObject status = new JSONObject();
+            if (!(o instanceof JSONObject)) {
+                status.put("status", "rejected");
+                status.put("message", "Entry is not a JSON object");
+                statuses.add(status);
+                continue;
+            }
+            JSONObject entry = (JSONObject) o;
+            String depot = Util.fixEmptyAndTrim(entry.optString("depot", null));
+            String stream = Util.fixEmptyAndTrim(entry.optString("stream", null));
+            String transaction = Util.fixEmptyAndTrim(entry.optString("transaction", null));
+            String reason = Util.fixEmptyAndTrim(entry.optString("reason", null));
+            status.put("stream", stream);
+            status.put("transaction", transaction);
+            status.put("reason", reason);
+
+            String error;
+            try {
+                error = fireEvent(uri, depot, stream, transaction, parseReason(reason), origin, new ArrayList<>());
+            } catch (IllegalArgumentException e) {
+                error = "Unknown reason " + reason;
+            }
+            status.put("status", error == null ? "accepted" : "rejected");
+            if (error != null) {
+                status.put("message", error);
+            } else {
+                streams.add(stream);
+            }
+            statuses.add(status);
+        }
+        lastStreams = StringUtils.join(streams, ",");
+
+        return (staplerRequest, staplerResponse, node) -> {
+            staplerResponse.setStatus(SC_OK);
+            staplerResponse.setContentType("application/json;charset=UTF-8");
+            staplerResponse.getWriter().print(statuses.toString());
+        };
+    }
+
+    @CheckForNull
+    private static Reason parseReason(@CheckForNull String reason) {
+        return reason == null ? null : Reason.valueOf(reason.toUpperCase());
+    }
+
+    /**
+     * Records the event for a single stream in the {@link AccurevEventJournal} and dispatches it.
+     *
+     * @return {@code null} if the event was fired, otherwise the reason it was rejected.
+     */
+    @CheckForNull
+    static String fireEvent(URI uri, @CheckForNull String depot, @CheckForNull String stream, @CheckForNull String transaction,
+                                    @CheckForNull Reason reason, String origin, List<ResponseContributor> contributors) {
+        if (StringUtils.isBlank(stream)) {
+            return "No stream given";
+        }
+        AccurevCommitPayload payload;
+        switch (reason != null ? reason : Reason.NONE) {
+            case CREATED:
+            case DELETED:
+                // Created streams are always resolved to their newest transaction
+                payload = new AccurevCommitPayload(uri, depot, stream, "1");
+                break;
+            case UPDATED:
+                if (StringUtils.isBlank(transaction)) {
+                    return "No transaction given";
+                }
+                if (!isTransaction(transaction)) {
+                    return "Transaction " + transaction + " is not a positive number";
+                }
+                payload = new AccurevCommitPayload(uri, depot, stream, transaction);
+                break;
+            default:
+                return "No suitable Command found";
+        }
+        dispatch(AccurevEventJournal.get().append(reason, payload, origin), contributors);
+        return null;
+    }
+
+    /**
+     * @return whether the transaction is a positive number, like the ids of the server.
+     */
+    private static boolean isTransaction(String transaction) {
+        try {
+            return Long.parseLong(transaction.trim()) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Dispatches a journaled event to the listeners and the SCM sources. The event is marked consumed by
+     * {@link AccurevEventJournal.ConsumedListener} after the head event went through every listener.
+     *
+     * @param event        the event.
+     * @param contributors collects the contributions of the listeners to the response.
+     */
+    static void dispatch(AccurevEventJournal.Event event, List<ResponseContributor> contributors) {
+        AccurevCommitPayload payload = event.getPayload();
+        SCMEvent.Type type;
+        switch (event.getReason()) {
+            case CREATED:
+                LOGGER.log(Level.FINE, "notify created action for {0}", payload.getStream());
+                type = SCMEvent.Type.CREATED;
+                break;
+            case DELETED:
+                LOGGER.log(Level.FINE, "notify delete action for {0}", payload.getStream());
+                type = SCMEvent.Type.REMOVED;
+                break;
+            default:
+                LOGGER.log(Level.FINE, "notify update action for {0}", payload.getStream());
+                type = SCMEvent.Type.UPDATED;
+                break;
+        }
+        // Recent query results may predate the event
+        AccurevQueryCoalescer.invalidateAll();
+        try (AccurevTracer.Span span = AccurevTracer.span("event")) {
+            span.attr("event", event.getId()).attr("reason", event.getReason()).attr("origin", event.getOrigin())
+                    .attr("stream", payload.getStream()).attr("transaction", payload.getTransaction());
+            if (type != SCMEvent.Type.REMOVED) {
+                notifyListeners(event.getOrigin(), payload.getUrl(), payload.getDepot(), payload.getTransaction(),
+                        payload.getStream(), contributors);
+            }
+            SCMHeadEvent.fireNow(new AccurevSCMHeadEvent<String>(type, payload, event.getOrigin(), event.getId()));
+        }
+    }
+
+    private static void notifyListeners(String origin, URI uri, @CheckForNull String depot, @CheckForNull String transaction,
+                                        String stream, List<ResponseContributor> contributors) {
+        for (Listener listener : ExtensionList.lookup(Listener.class)) {
+            try {
+                contributors.addAll(listener.onNotifyCommit(origin, uri, depot, transaction, stream));
+            } catch (MalformedURLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Listener " + listener + " failed to handle notification for " + stream, e);
+            }
+        }
+    }
+
 
     public static abstract class Listener implements ExtensionPoint {
         public  List<ResponseContributor> onNotifyCommit(String origin,
@@ -166,7 +346,26 @@ public class AccurevStatus implements UnprotectedRootAction {
                                    String transaction,
                                    String... streams) throws MalformedURLException {
 
-            throw new AbstractMethodError();
+            return Collections.emptyList();
+        }
+
+        /**
+         * Called for every stream that was created or updated.
+         *
+         * @param origin      the origin of the notification.
+         * @param uri         the Accurev server.
+         * @param depot       the depot of the streams, or {@code null} if not included in the notification.
+         * @param transaction the transaction.
+         * @param streams     the streams.
+         * @return the contributions to the response.
+         * @throws MalformedURLException if the server is not valid.
+         */
+        public List<ResponseContributor> onNotifyCommit(String origin,
+                                                        URI uri,
+                                                        @CheckForNull String depot,
+                                                        String transaction,
+                                                        String... streams) throws MalformedURLException {
+            return onNotifyCommit(origin, uri, transaction, streams);
         }
 
 
@@ -197,7 +396,7 @@ public class AccurevStatus implements UnprotectedRootAction {
             }
         }
 
-        private static class PollingScheduledResponseContributor extends ResponseContributor {
+        public static class PollingScheduledResponseContributor extends ResponseContributor {
             /**
              * The project
              */
@@ -229,7 +428,7 @@ public class AccurevStatus implements UnprotectedRootAction {
             }
         }
 
-        private static class ScheduledResponseContributor extends ResponseContributor {
+        public static class ScheduledResponseContributor extends ResponseContributor {
             /**
              * The project
              */
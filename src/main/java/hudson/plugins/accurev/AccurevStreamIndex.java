@@ -0,0 +1,477 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Items;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.branch.Branch;
+import jenkins.branch.BranchProjectFactory;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.Jenkins;
+import jenkins.plugins.accurev.AccurevSCMSource;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.triggers.SCMTriggerItem;
+import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index from Accurev streams to the jobs building them, so webhook events can be resolved without scanning every job.
+ * <p>
+ * Stream names are unique on an Accurev server, so the index is keyed by server and stream. The depot is kept next
+ * to every job and is only used to narrow down a lookup when it is known.
+ * <p>
+ * The {@link AccurevSCMSource} instances are indexed by server and depot as well, so events only have to be offered
+ * to the sources pointing at the server they came from.
+ */
+@Extension
+public class AccurevStreamIndex extends ItemListener {
+
+    private final Map<Key, Map<String, Set<String>>> jobsByStream = new ConcurrentHashMap<>();
+    private final Map<String, Set<Entry>> entriesByJob = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Set<String>>> sourcesByServer = new ConcurrentHashMap<>();
+    private final Map<String, Set<SourceEntry>> sourcesByOwner = new ConcurrentHashMap<>();
+
+    public static AccurevStreamIndex get() {
+        return ExtensionList.lookupSingleton(AccurevStreamIndex.class);
+    }
+
+    /**
+     * Normalizes an Accurev remote to the form used as index key.
+     *
+     * @param remote the remote, as {@code host:port}.
+     * @return the key of the server.
+     */
+    @NonNull
+    public static String serverKey(@CheckForNull String remote) {
+        return remote == null ? "" : remote.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Finds the jobs building a stream.
+     *
+     * @param server the server, see {@link #serverKey(String)}.
+     * @param depot  the depot of the stream or {@code null} if not known.
+     * @param stream the stream.
+     * @return the full names of the jobs.
+     */
+    @NonNull
+    public Set<String> getJobs(@NonNull String server, @CheckForNull String depot, @NonNull String stream) {
+        Map<String, Set<String>> byDepot = jobsByStream.get(new Key(serverKey(server), stream));
+        if (byDepot == null) {
+            return Collections.emptySet();
+        }
+        Set<String> jobs = new HashSet<>();
+        if (depot != null && !depot.isEmpty()) {
+            // Jobs configured without a depot can still build the stream
+            jobs.addAll(byDepot.getOrDefault(depot, Collections.emptySet()));
+            jobs.addAll(byDepot.getOrDefault("", Collections.emptySet()));
+            return jobs;
+        }
+        for (Set<String> names : byDepot.values()) {
+            jobs.addAll(names);
+        }
+        return jobs;
+    }
+
+    /**
+     * Checks if a direct child of the given item builds the stream.
+     *
+     * @param parent the parent, typically the owner of an {@link AccurevSCMSource}.
+     * @param server the server, see {@link #serverKey(String)}.
+     * @param depot  the depot of the stream or {@code null} if not known.
+     * @param stream the stream.
+     * @return {@code true} if the parent has a job for the stream.
+     */
+    public boolean hasChildJob(@NonNull Item parent, @NonNull String server, @CheckForNull String depot, @NonNull String stream) {
+        return !getChildJobs(parent, server, depot, stream).isEmpty();
+    }
+
+    /**
+     * Finds the direct children of the given item building the stream.
+     *
+     * @param parent the parent, typically a multibranch project.
+     * @param server the server, see {@link #serverKey(String)}.
+     * @param depot  the depot of the stream or {@code null} if not known.
+     * @param stream the stream.
+     * @return the full names of the jobs.
+     */
+    @NonNull
+    public Set<String> getChildJobs(@NonNull Item parent, @NonNull String server, @CheckForNull String depot, @NonNull String stream) {
+        String prefix = parent.getFullName() + "/";
+        Set<String> jobs = new HashSet<>();
+        for (String job : getJobs(server, depot, stream)) {
+            if (job.startsWith(prefix) && job.indexOf('/', prefix.length()) < 0) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Identifies a source across owners.
+     *
+     * @param source the source.
+     * @return the reference or {@code null} if the source has no owner.
+     */
+    @CheckForNull
+    public static String sourceRef(@NonNull SCMSource source) {
+        SCMSourceOwner owner = source.getOwner();
+        return owner == null ? null : owner.getFullName() + "#" + source.getId();
+    }
+
+    /**
+     * Finds the sources pointing at a server.
+     *
+     * @param server the server, see {@link #serverKey(String)}.
+     * @param depot  the depot or {@code null} if not known.
+     * @return the references of the sources, see {@link #sourceRef(SCMSource)}.
+     */
+    @NonNull
+    public Set<String> getSources(@NonNull String server, @CheckForNull String depot) {
+        Map<String, Set<String>> byDepot = sourcesByServer.get(serverKey(server));
+        if (byDepot == null) {
+            return Collections.emptySet();
+        }
+        Set<String> sources = new HashSet<>();
+        if (depot != null && !depot.isEmpty()) {
+            sources.addAll(byDepot.getOrDefault(depot, Collections.emptySet()));
+            sources.addAll(byDepot.getOrDefault("", Collections.emptySet()));
+            return sources;
+        }
+        for (Set<String> refs : byDepot.values()) {
+            sources.addAll(refs);
+        }
+        return sources;
+    }
+
+    @Override
+    public void onLoaded() {
+        synchronized (this) {
+            jobsByStream.clear();
+            entriesByJob.clear();
+            sourcesByServer.clear();
+            sourcesByOwner.clear();
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            reindexAll(jenkins);
+        }
+    }
+
+    @Override
+    public void onCreated(Item item) {
+        reindexAll(item);
+    }
+
+    @Override
+    public void onCopied(Item src, Item item) {
+        reindexAll(item);
+    }
+
+    @Override
+    public void onUpdated(Item item) {
+        reindexAll(item);
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        removeAll(item.getFullName());
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        removeAll(oldFullName);
+        reindexAll(item);
+    }
+
+    private void reindexAll(Object item) {
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            if (item instanceof Job) {
+                reindex((Job<?, ?>) item);
+            }
+            if (item instanceof SCMSourceOwner) {
+                reindexSources((SCMSourceOwner) item);
+            }
+            if (item instanceof ItemGroup) {
+                for (Job<?, ?> job : Items.allItems((ItemGroup<?>) item, Job.class)) {
+                    reindex(job);
+                }
+                for (SCMSourceOwner owner : Items.allItems((ItemGroup<?>) item, SCMSourceOwner.class)) {
+                    reindexSources(owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the streams a job builds.
+     *
+     * @param job the job.
+     */
+    public synchronized void reindex(@NonNull Job<?, ?> job) {
+        String name = job.getFullName();
+        remove(name);
+        Set<Entry> entries = new HashSet<>();
+        try {
+            collect(job, entries);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not index " + name, e);
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        entriesByJob.put(name, entries);
+        for (Entry entry : entries) {
+            jobsByStream.computeIfAbsent(entry.key, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(entry.depot, d -> ConcurrentHashMap.newKeySet())
+                    .add(name);
+        }
+    }
+
+    /**
+     * Recomputes the sources of an owner.
+     *
+     * @param owner the owner.
+     */
+    public synchronized void reindexSources(@NonNull SCMSourceOwner owner) {
+        String name = owner.getFullName();
+        removeSources(name);
+        Set<SourceEntry> entries = new HashSet<>();
+        for (SCMSource source : owner.getSCMSources()) {
+            if (source instanceof AccurevSCMSource) {
+                AccurevSCMSource accurevSource = (AccurevSCMSource) source;
+                entries.add(new SourceEntry(accurevSource.getRemote(), accurevSource.getDepot(), name + "#" + source.getId()));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        sourcesByOwner.put(name, entries);
+        for (SourceEntry entry : entries) {
+            sourcesByServer.computeIfAbsent(entry.server, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(entry.depot, d -> ConcurrentHashMap.newKeySet())
+                    .add(entry.ref);
+        }
+    }
+
+    private synchronized void removeAll(String fullName) {
+        String prefix = fullName + "/";
+        for (String name : matching(entriesByJob.keySet(), fullName, prefix)) {
+            remove(name);
+        }
+        for (String name : matching(sourcesByOwner.keySet(), fullName, prefix)) {
+            removeSources(name);
+        }
+    }
+
+    private static List<String> matching(Collection<String> names, String fullName, String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String name : names) {
+            if (name.equals(fullName) || name.startsWith(prefix)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    private void remove(String name) {
+        Set<Entry> entries = entriesByJob.remove(name);
+        if (entries == null) {
+            return;
+        }
+        for (Entry entry : entries) {
+            removeFrom(jobsByStream, entry.key, entry.depot, name);
+        }
+    }
+
+    private void removeSources(String owner) {
+        Set<SourceEntry> entries = sourcesByOwner.remove(owner);
+        if (entries == null) {
+            return;
+        }
+        for (SourceEntry entry : entries) {
+            removeFrom(sourcesByServer, entry.server, entry.depot, entry.ref);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Map<String, Set<String>>> index, K key, String depot, String value) {
+        Map<String, Set<String>> byDepot = index.get(key);
+        if (byDepot == null) {
+            return;
+        }
+        Set<String> values = byDepot.get(depot);
+        if (values != null) {
+            values.remove(value);
+            if (values.isEmpty()) {
+                byDepot.remove(depot, values);
+            }
+        }
+        if (byDepot.isEmpty()) {
+            index.remove(key, byDepot);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void collect(Job<?, ?> job, Set<Entry> entries) {
+        ItemGroup<?> parent = job.getParent();
+        if (parent instanceof MultiBranchProject) {
+            MultiBranchProject project = (MultiBranchProject) parent;
+            BranchProjectFactory factory = project.getProjectFactory();
+            if (factory.isProject(job)) {
+                Branch branch = factory.getBranch(job);
+                SCMSource source = project.getSCMSource(branch.getSourceId());
+                if (source instanceof AccurevSCMSource) {
+                    AccurevSCMSource accurevSource = (AccurevSCMSource) source;
+                    entries.add(new Entry(accurevSource.getRemote(), accurevSource.getDepot(), branch.getHead().getName()));
+                }
+                return;
+            }
+        }
+
+        Collection<SCM> scms = new ArrayList<>();
+        if (job instanceof WorkflowJob && ((WorkflowJob) job).getDefinition() instanceof CpsScmFlowDefinition) {
+            scms.add(((CpsScmFlowDefinition) ((WorkflowJob) job).getDefinition()).getScm());
+        }
+        SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+        if (item != null) {
+            scms.addAll(item.getSCMs());
+        }
+        for (SCM scm : scms) {
+            if (scm instanceof AccurevSCM) {
+                AccurevSCM accurevSCM = (AccurevSCM) scm;
+                for (ServerRemoteConfig config : accurevSCM.getServerRemoteConfigs()) {
+                    for (StreamSpec stream : accurevSCM.getStreams()) {
+                        entries.add(new Entry(config.getUrl(), stream.getDepot(), stream.getName()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Configuration changes made through the API do not fire {@link ItemListener#onUpdated(Item)}, catch them on save.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Item) {
+                AccurevStreamIndex.get().reindexAll(o);
+            }
+        }
+    }
+
+    /**
+     * Pipelines report the SCMs of their last build, so refresh the index once a build has checked out.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            if (run.getParent() instanceof WorkflowJob) {
+                AccurevStreamIndex.get().reindex(run.getParent());
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String server;
+        private final String stream;
+
+        Key(String server, String stream) {
+            this.server = server;
+            this.stream = stream;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return server.equals(key.server) && stream.equals(key.stream);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, stream);
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final String depot;
+
+        Entry(String remote, @CheckForNull String depot, String stream) {
+            this.key = new Key(serverKey(remote), stream);
+            this.depot = depot == null ? "" : depot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Entry entry = (Entry) o;
+            return key.equals(entry.key) && depot.equals(entry.depot);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, depot);
+        }
+    }
+
+    private static final class SourceEntry {
+        private final String server;
+        private final String depot;
+        private final String ref;
+
+        SourceEntry(String remote, @CheckForNull String depot, String ref) {
+            this.server = serverKey(remote);
+            this.depot = depot == null ? "" : depot;
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SourceEntry that = (SourceEntry) o;
+            return server.equals(that.server) && depot.equals(that.depot) && ref.equals(that.ref);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, depot, ref);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevStreamIndex.class.getName());
+}
@@ -0,0 +1,246 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.Proc;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical trace spans of indexing, polling, checkout, event handling and every {@code accurev} command.
+ * <p>
+ * Spans are written as Chrome trace events to {@code JENKINS_HOME/logs/accurev/trace.json}, which can be opened in
+ * {@code chrome://tracing} or Perfetto. A span opened with {@link #span(String)} is the parent of all spans opened on
+ * the same thread until it is closed. The file is rotated once it exceeds {@code maxBytes}, keeping {@code maxFiles}
+ * old files. Tracing is off unless the system property {@code hudson.plugins.accurev.AccurevTracer.enabled} is set.
+ */
+@Extension
+public class AccurevTracer extends AccurevLauncherDecorator {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevTracer.class.getName());
+    static boolean ENABLED = Boolean.getBoolean(AccurevTracer.class.getName() + ".enabled");
+    private static final long MAX_BYTES = Long.getLong(AccurevTracer.class.getName() + ".maxBytes", 10L * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger(AccurevTracer.class.getName() + ".maxFiles", 5);
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final Span NOOP = new Span(null, "noop", null, false);
+    private static final Object LOCK = new Object();
+
+    /**
+     * Opens a span, the caller has to close it on the same thread.
+     *
+     * @param name the name, e.g. {@code indexing}.
+     * @return the span.
+     */
+    @NonNull
+    public static Span span(@NonNull String name) {
+        if (!ENABLED) {
+            return NOOP;
+        }
+        return new Span(CURRENT.get(), name, IDS.incrementAndGet(), true);
+    }
+
+    /**
+     * Adds an attribute to the span open on this thread, if any.
+     *
+     * @param key   the key.
+     * @param value the value.
+     */
+    public static void annotate(@NonNull String key, @CheckForNull Object value) {
+        Span current = CURRENT.get();
+        if (current != null) {
+            current.attr(key, value);
+        }
+    }
+
+    static File getFile() {
+        return new File(Jenkins.get().getRootDir(), "logs/accurev/trace.json");
+    }
+
+    private static void write(Span span, long end) {
+        JSONObject event = new JSONObject();
+        event.put("name", span.name);
+        event.put("cat", "accurev");
+        event.put("ph", "X");
+        event.put("ts", TimeUnit.NANOSECONDS.toMicros(span.startWall));
+        event.put("dur", TimeUnit.NANOSECONDS.toMicros(end - span.start));
+        event.put("pid", 1);
+        event.put("tid", span.thread);
+        Map<String, Object> args = new LinkedHashMap<>(span.attributes);
+        args.put("id", span.id);
+        if (span.parent != null) {
+            args.put("parent", span.parent.id);
+        }
+        event.put("args", args);
+        File file = getFile();
+        synchronized (LOCK) {
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                if (file.length() > MAX_BYTES) {
+                    rotate(file);
+                }
+                boolean created = !file.exists();
+                try (Writer w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    if (created) {
+                        // The closing bracket is optional in the Chrome trace format, so the file stays appendable
+                        w.write("[\n");
+                    }
+                    w.write(event.toString());
+                    w.write(",\n");
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to write trace to " + file, e);
+            }
+        }
+    }
+
+    private static void rotate(File file) throws IOException {
+        for (int i = MAX_FILES - 1; i >= 1; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists()) {
+                Files.move(from.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(new File(file.getPath() + "." + (MAX_FILES + 1)).toPath());
+    }
+
+    /**
+     * Opens a span per {@code accurev} command, from its start to the end of {@link Proc#join()}.
+     */
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        if (!ENABLED) {
+            return launcher;
+        }
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (!isAccurev(cmds)) {
+                    return super.launch(starter);
+                }
+                // Not made current, a command has no children and may be joined on another thread
+                Span span = new Span(CURRENT.get(), "accurev " + command(cmds),
+                        IDS.incrementAndGet(), false);
+                span.attr("server", server(cmds));
+                Proc proc;
+                try {
+                    proc = super.launch(starter);
+                } catch (IOException | RuntimeException e) {
+                    span.attr("error", e.toString()).close();
+                    throw e;
+                }
+                return new TracedProc(proc, span);
+            }
+        };
+    }
+
+    /**
+     * A trace span, closing it writes it to the trace file.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Span parent;
+        private final String name;
+        private final Long id;
+        private final boolean current;
+        private final long start = System.nanoTime();
+        private final long startWall = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        private final long thread = Thread.currentThread().getId();
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private boolean closed;
+
+        private Span(Span parent, String name, Long id, boolean current) {
+            this.parent = parent;
+            this.name = name;
+            this.id = id;
+            this.current = current;
+            if (current) {
+                CURRENT.set(this);
+            }
+        }
+
+        /**
+         * Adds an attribute, e.g. the stream, transaction or a count of elements.
+         *
+         * @param key   the key.
+         * @param value the value.
+         * @return this.
+         */
+        public Span attr(@NonNull String key, @CheckForNull Object value) {
+            if (id != null) {
+                synchronized (this) {
+                    attributes.put(key, value == null ? null : value instanceof Number || value instanceof Boolean ? value : value.toString());
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (id == null) {
+                return;
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            if (current && CURRENT.get() == this) {
+                if (parent == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(parent);
+                }
+            }
+            write(this, System.nanoTime());
+        }
+    }
+
+    private static final class TracedProc extends ForwardingProc {
+        private final Span span;
+
+        private TracedProc(Proc proc, Span span) {
+            super(proc);
+            this.span = span;
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            proc.kill();
+            span.attr("killed", true).close();
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            try {
+                int exitCode = proc.join();
+                span.attr("exitCode", exitCode);
+                return exitCode;
+            } finally {
+                span.close();
+            }
+        }
+    }
+}
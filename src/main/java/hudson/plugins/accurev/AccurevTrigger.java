@@ -2,17 +2,53 @@ package hudson.plugins.accurev;
 
 import antlr.ANTLRException;
 import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.CauseAction;
 import hudson.model.Item;
 import hudson.model.Job;
+import hudson.scm.PollingResult;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
 import jenkins.triggers.SCMTriggerItem;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 public class AccurevTrigger extends Trigger<Job<?, ?>> {
 
+    static int MAX_CONCURRENT_POLLS = Math.max(1,
+            Integer.getInteger(AccurevTrigger.class.getName() + ".maxConcurrentPolls", 10));
+
+    private boolean buildOnNotify;
+
+    private transient boolean polling;
+    private transient boolean pollAgain;
+    private transient String pollTransaction;
+
     public AccurevTrigger(String scmpoll_spec) throws ANTLRException {
         super(scmpoll_spec);
     }
@@ -22,15 +58,123 @@ public class AccurevTrigger extends Trigger<Job<?, ?>> {
         super("");
     }
 
+    public boolean isBuildOnNotify() {
+        return buildOnNotify;
+    }
+
+    /**
+     * @param buildOnNotify {@code true} to schedule a build for every notification instead of polling the stream first.
+     */
+    @DataBoundSetter
+    public void setBuildOnNotify(boolean buildOnNotify) {
+        this.buildOnNotify = buildOnNotify;
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl)super.getDescriptor();
     }
 
+    /**
+     * Polls the job once in the background and schedules a build if there are changes.
+     * Notifications arriving while a poll is running are folded into a single extra poll. Polls run on the executor of
+     * the {@link DescriptorImpl}, at most {@code maxConcurrentPolls} at a time.
+     *
+     * @param transaction the transaction that caused the poll.
+     */
+    public void poll(@CheckForNull String transaction) {
+        synchronized (this) {
+            pollAgain = true;
+            pollTransaction = transaction;
+            if (polling) {
+                return;
+            }
+            polling = true;
+        }
+        getDescriptor().getExecutor().submit(() -> {
+            while (true) {
+                String next;
+                synchronized (AccurevTrigger.this) {
+                    if (!pollAgain) {
+                        polling = false;
+                        return;
+                    }
+                    pollAgain = false;
+                    next = pollTransaction;
+                }
+                pollNow(next);
+            }
+        });
+    }
+
+    private void pollNow(@CheckForNull String transaction) {
+        SCMTriggerItem item = job == null ? null : SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+        if (item == null) {
+            return;
+        }
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM);
+             StreamTaskListener listener = new StreamTaskListener(getLogFile())) {
+            PollingResult result = item.poll(listener);
+            if (result.hasChanges()) {
+                listener.getLogger().println("Changes found, scheduling a build");
+                item.scheduleBuild2(item.getQuietPeriod(), new CauseAction(new AccurevStatus.Listener.CommitHookCause(transaction)));
+            } else {
+                listener.getLogger().println("No changes");
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to poll " + job.getFullName(), e);
+        }
+    }
+
+    public File getLogFile() {
+        return new File(job.getRootDir(), "accurev-polling.log");
+    }
+
+    /**
+     * Resolves the jobs with an {@link AccurevTrigger} for the notified streams through the {@link AccurevStreamIndex}.
+     */
+    @Extension
+    public static class ListenerImpl extends AccurevStatus.Listener {
+
+        @Override
+        public List<AccurevStatus.ResponseContributor> onNotifyCommit(String origin, URI uri, @CheckForNull String depot,
+                                                                      String transaction, String... streams) {
+            List<AccurevStatus.ResponseContributor> result = new ArrayList<>();
+            Set<String> jobs = new LinkedHashSet<>();
+            for (String stream : streams) {
+                jobs.addAll(AccurevStreamIndex.get().getJobs(uri.toString(), depot, stream));
+            }
+            try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+                for (String name : jobs) {
+                    Job<?, ?> job = Jenkins.get().getItemByFullName(name, Job.class);
+                    if (job == null) {
+                        continue;
+                    }
+                    AccurevTrigger trigger = ParameterizedJobMixIn.getTrigger(job, AccurevTrigger.class);
+                    if (trigger == null) {
+                        continue;
+                    }
+                    if (trigger.isBuildOnNotify()) {
+                        LOGGER.log(Level.FINE, "Scheduling {0} for transaction {1}", new Object[]{name, transaction});
+                        ParameterizedJobMixIn.scheduleBuild2(job, -1, new CauseAction(new CommitHookCause(transaction)));
+                        result.add(new ScheduledResponseContributor(job));
+                    } else {
+                        LOGGER.log(Level.FINE, "Polling {0} for transaction {1}", new Object[]{name, transaction});
+                        trigger.poll(transaction);
+                        result.add(new PollingScheduledResponseContributor(job));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
     @Extension
     @Symbol("accurevPush")
     public static class DescriptorImpl extends TriggerDescriptor {
 
+        private transient ExecutorService executor;
+
         @Override
         public boolean isApplicable(Item item) {
             return item instanceof Job && SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(item) != null;
@@ -40,6 +184,37 @@ public class AccurevTrigger extends Trigger<Job<?, ?>> {
         public String getDisplayName() {
             return "Accurev hook trigger for SCMPolling";
         }
+
+        /**
+         * @return the executor running the polls, separate from {@link jenkins.util.Timer} so many notified jobs do
+         * not hold up the periodic work of Jenkins.
+         */
+        synchronized ExecutorService getExecutor() {
+            if (executor == null) {
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_CONCURRENT_POLLS, MAX_CONCURRENT_POLLS,
+                        60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                        new NamingThreadFactory(new DaemonThreadFactory(), "AccurevTrigger polling"));
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+            }
+            return executor;
+        }
+
+        synchronized void shutdownExecutor() {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
     }
-}
 
+    @Terminator
+    public static void shutdown() {
+        DescriptorImpl descriptor = ExtensionList.lookup(DescriptorImpl.class).get(DescriptorImpl.class);
+        if (descriptor != null) {
+            descriptor.shutdownExecutor();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevTrigger.class.getName());
+}
@@ -0,0 +1,168 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules the builds of child streams triggered by a parent stream build.
+ * <p>
+ * Every trigger wave, the children triggered by one upstream build, is held back for its quiet period. A stream that
+ * is already pending in any wave is not added again, instead its quiet period restarts, so a storm of promotes ends
+ * up as one build per stream. Once due, the children are released parent first along the stream tree, and at most
+ * {@code maxInFlight} builds of a wave are queued or running at the same time.
+ */
+@Extension
+public class ChildStreamScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(ChildStreamScheduler.class.getName());
+    private static final long TICK = Long.getLong(ChildStreamScheduler.class.getName() + ".tick", 1000);
+
+    /**
+     * The pending children by job full name.
+     */
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    /**
+     * The children released per wave and not finished yet, by the id of the upstream build.
+     */
+    private final Map<String, Set<String>> inFlight = new HashMap<>();
+    private ScheduledFuture<?> ticker;
+
+    public static ChildStreamScheduler get() {
+        return ExtensionList.lookupSingleton(ChildStreamScheduler.class);
+    }
+
+    /**
+     * Adds a trigger wave.
+     *
+     * @param upstream    the build triggering the children.
+     * @param children    the jobs of the children with their depth below the upstream stream.
+     * @param quietPeriod the quiet period in seconds.
+     * @param maxInFlight the maximum of builds of the wave queued or running at once, {@code 0} for no limit.
+     */
+    public synchronized void submit(@NonNull Run<?, ?> upstream, @NonNull Map<Job<?, ?>, Integer> children,
+                                    int quietPeriod, int maxInFlight) {
+        long due = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, quietPeriod));
+        String wave = upstream.getExternalizableId();
+        Cause cause = new Cause.UpstreamCause(upstream);
+        for (Map.Entry<Job<?, ?>, Integer> child : children.entrySet()) {
+            String name = child.getKey().getFullName();
+            Pending p = pending.get(name);
+            if (p != null) {
+                LOGGER.log(Level.FINE, "{0} is already pending, restarting its quiet period", name);
+                p.due = Math.max(p.due, due);
+                continue;
+            }
+            pending.put(name, new Pending(name, child.getKey(), child.getValue(), wave, cause, due, maxInFlight));
+        }
+        if (ticker == null && !pending.isEmpty()) {
+            ticker = Timer.get().scheduleWithFixedDelay(this::tick, TICK, TICK, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the full names of the children waiting to be released.
+     */
+    public synchronized Set<String> getPending() {
+        return new HashSet<>(pending.keySet());
+    }
+
+    synchronized void tick() {
+        try {
+            release(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to schedule child streams", e);
+        }
+        if (pending.isEmpty() && inFlight.isEmpty() && ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+
+    private void release(long now) {
+        for (Iterator<Set<String>> it = inFlight.values().iterator(); it.hasNext(); ) {
+            Set<String> names = it.next();
+            names.removeIf(name -> !isActive(name));
+            if (names.isEmpty()) {
+                it.remove();
+            }
+        }
+        List<Pending> candidates = new ArrayList<>(pending.values());
+        candidates.sort(Comparator.comparingInt((Pending p) -> p.depth).thenComparing(p -> p.name));
+        List<Pending> released = new ArrayList<>();
+        Set<String> blocked = new HashSet<>();
+        for (Pending p : candidates) {
+            if (blocked.contains(p.wave)) {
+                continue;
+            }
+            Set<String> wave = inFlight.computeIfAbsent(p.wave, k -> new HashSet<>());
+            if (p.due > now || (p.maxInFlight > 0 && wave.size() >= p.maxInFlight)) {
+                // Keep the parent first order, deeper streams of the wave wait as well
+                blocked.add(p.wave);
+                if (wave.isEmpty()) {
+                    inFlight.remove(p.wave);
+                }
+                continue;
+            }
+            wave.add(p.name);
+            released.add(p);
+            pending.remove(p.name);
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+        Queue.withLock(() -> {
+            for (Pending p : released) {
+                LOGGER.log(Level.FINE, "Scheduling {0} for {1}", new Object[]{p.name, p.wave});
+                ParameterizedJobMixIn.scheduleBuild2(p.job, 0, new CauseAction(p.cause));
+            }
+        });
+    }
+
+    private static boolean isActive(String name) {
+        Job<?, ?> job = Jenkins.get().getItemByFullName(name, Job.class);
+        return job != null && (job.isInQueue() || job.isBuilding());
+    }
+
+    private static final class Pending {
+        private final String name;
+        private final Job<?, ?> job;
+        private final int depth;
+        private final String wave;
+        private final Cause cause;
+        private final int maxInFlight;
+        private long due;
+
+        private Pending(String name, Job<?, ?> job, int depth, String wave, Cause cause, long due, int maxInFlight) {
+            this.name = name;
+            this.job = job;
+            this.depth = depth;
+            this.wave = wave;
+            this.cause = cause;
+            this.due = due;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+}
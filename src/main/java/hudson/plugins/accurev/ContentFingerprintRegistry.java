@@ -0,0 +1,175 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.plugins.accurev.util.ContentFingerprint;
+import hudson.plugins.accurev.util.ContentFingerprintAction;
+import hudson.util.AtomicFileWriter;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers which build last built the content with a given {@link ContentFingerprint}, within a family of jobs.
+ * <p>
+ * The family, see {@link #scope(Job)}, keeps unrelated jobs checking out the same content, like a release job on a
+ * stream that CI just built, from being deduplicated against each other. Only successful and unstable builds are
+ * recorded. The registry is kept in {@code JENKINS_HOME} as a text file with one family and fingerprint, and build id
+ * per line, and is limited to the most recently used fingerprints.
+ */
+@Extension
+public class ContentFingerprintRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentFingerprintRegistry.class.getName());
+    private static final int MAX_SIZE = Integer.getInteger(ContentFingerprintRegistry.class.getName() + ".maxSize", 10000);
+
+    private final Map<String, String> builds = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    private boolean loaded;
+    private int appended;
+
+    public static ContentFingerprintRegistry get() {
+        return ExtensionList.lookupSingleton(ContentFingerprintRegistry.class);
+    }
+
+    protected File getFile() {
+        return new File(Jenkins.get().getRootDir(), "accurev-fingerprints.log");
+    }
+
+    /**
+     * @param job the job.
+     * @return the family of the job: the multibranch project building the stream hierarchy for its branch jobs, or
+     * else the job alone.
+     */
+    @NonNull
+    public static String scope(@NonNull Job<?, ?> job) {
+        ItemGroup<?> parent = job.getParent();
+        return parent instanceof MultiBranchProject ? ((MultiBranchProject<?, ?>) parent).getFullName() : job.getFullName();
+    }
+
+    /**
+     * Finds the build which built a fingerprint.
+     *
+     * @param scope       the family of jobs, see {@link #scope(Job)}.
+     * @param fingerprint the fingerprint.
+     * @return the build, or {@code null} if the content was not built in the family or the build was deleted since.
+     */
+    @CheckForNull
+    public synchronized Run<?, ?> getBuild(@NonNull String scope, @NonNull String fingerprint) {
+        load();
+        String key = scope + '|' + fingerprint;
+        String id = builds.get(key);
+        if (id == null) {
+            return null;
+        }
+        Run<?, ?> run = Run.fromExternalizableId(id);
+        if (run == null) {
+            builds.remove(key);
+        }
+        return run;
+    }
+
+    /**
+     * Records the build of a fingerprint.
+     *
+     * @param scope       the family of jobs, see {@link #scope(Job)}.
+     * @param fingerprint the fingerprint.
+     * @param run         the build.
+     */
+    public synchronized void record(@NonNull String scope, @NonNull String fingerprint, @NonNull Run<?, ?> run) {
+        load();
+        String key = scope + '|' + fingerprint;
+        String id = run.getExternalizableId();
+        builds.put(key, id);
+        if (++appended > MAX_SIZE) {
+            compact();
+            return;
+        }
+        File file = getFile();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            writer.write(key + "\t" + id + "\n");
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to " + file, e);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File file = getFile();
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    builds.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+        }
+        compact();
+    }
+
+    private void compact() {
+        appended = 0;
+        File file = getFile();
+        try {
+            AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Map.Entry<String, String> e : builds.entrySet()) {
+                    writer.write(e.getKey() + "\t" + e.getValue() + "\n");
+                }
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, e);
+        }
+    }
+
+    /**
+     * Records the fingerprint of every successful build.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            ContentFingerprintAction action = run.getAction(ContentFingerprintAction.class);
+            Result result = run.getResult();
+            if (action != null && result != null && result.isBetterOrEqualTo(Result.UNSTABLE)) {
+                get().record(scope(run.getParent()), action.getFingerprint(), run);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide pool of MQTT connections, one per broker.
+ * <p>
+ * Every connection gets its own client id, so concurrent builds no longer take over each others session. The
+ * connections are made in the background, reconnect automatically and buffer the messages published while they are
+ * down, so no caller ever waits for a broker.
+ */
+@Extension
+public class MqttConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(MqttConnectionPool.class.getName());
+    private static final long CONNECT_TIMEOUT = Long.getLong(MqttConnectionPool.class.getName() + ".connectTimeout", 10000);
+    private static final int MAX_INFLIGHT = Integer.getInteger(MqttConnectionPool.class.getName() + ".maxInflight", 100);
+    private static final int BUFFER_SIZE = Integer.getInteger(MqttConnectionPool.class.getName() + ".bufferSize", 5000);
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    public static MqttConnectionPool get() {
+        return ExtensionList.lookupSingleton(MqttConnectionPool.class);
+    }
+
+    /**
+     * @return a new client id, short enough for MQTT 3.1 brokers.
+     */
+    @NonNull
+    static String newClientId() {
+        return "jenkins-" + UUID.randomUUID().toString().replace("-", "").substring(0, 15);
+    }
+
+    /**
+     * Gets the connection to a broker, starting to connect it in the background unless it is connected or connecting.
+     * Never waits for the broker: until the first connect completed, publishing on the client fails and the
+     * {@link MqttOutbox} keeps the message for the next attempt, which starts as soon as the connection is up.
+     *
+     * @param broker the broker, e.g. {@code tcp://host:1883}.
+     * @return the client, possibly not connected yet.
+     * @throws MqttException if the broker URI is invalid or the connect could not be started.
+     */
+    @NonNull
+    public MqttAsyncClient getClient(@NonNull String broker) throws MqttException {
+        Connection connection = connections.get(broker);
+        if (connection == null) {
+            // Creating a client does not touch the network
+            synchronized (this) {
+                connection = connections.get(broker);
+                if (connection == null) {
+                    connection = new Connection(broker);
+                    connections.put(broker, connection);
+                }
+            }
+        }
+        connection.connect();
+        return connection.client;
+    }
+
+    /**
+     * Disconnects every broker.
+     */
+    public synchronized void close() {
+        for (Map.Entry<String, Connection> e : connections.entrySet()) {
+            MqttAsyncClient client = e.getValue().client;
+            try {
+                if (client.isConnected()) {
+                    client.disconnect().waitForCompletion(CONNECT_TIMEOUT);
+                }
+                client.close(true);
+            } catch (MqttException x) {
+                LOGGER.log(Level.FINE, "Failed to disconnect from " + e.getKey(), x);
+            }
+        }
+        connections.clear();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        MqttConnectionPool pool = ExtensionList.lookup(MqttConnectionPool.class).get(MqttConnectionPool.class);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * The client of one broker and the state of its first connect, later reconnects are automatic.
+     */
+    private static final class Connection {
+        private final String broker;
+        private final MqttAsyncClient client;
+        private final MqttConnectOptions options = new MqttConnectOptions();
+        private boolean connecting;
+        private boolean established;
+
+        private Connection(String broker) throws MqttException {
+            this.broker = broker;
+            client = new MqttAsyncClient(broker, newClientId(), new MemoryPersistence());
+            options.setCleanSession(true);
+            options.setAutomaticReconnect(true);
+            options.setMaxInflight(MAX_INFLIGHT);
+            options.setConnectionTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(CONNECT_TIMEOUT)));
+            DisconnectedBufferOptions buffer = new DisconnectedBufferOptions();
+            buffer.setBufferEnabled(true);
+            buffer.setBufferSize(BUFFER_SIZE);
+            buffer.setDeleteOldestMessages(false);
+            client.setBufferOpts(buffer);
+        }
+
+        /**
+         * Starts the first connect, or a new one after it failed, and returns right away.
+         */
+        void connect() throws MqttException {
+            synchronized (this) {
+                if (established || connecting) {
+                    return;
+                }
+                connecting = true;
+            }
+            LOGGER.log(Level.FINE, "Connecting to broker {0} as {1}", new Object[]{broker, client.getClientId()});
+            try {
+                client.connect(options, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        synchronized (Connection.this) {
+                            connecting = false;
+                            established = true;
+                        }
+                        LOGGER.log(Level.FINE, "Connected to broker {0}", broker);
+                        if (Jenkins.getInstanceOrNull() != null) {
+                            // Deliver what was stored while connecting
+                            Timer.get().submit(() -> MqttOutbox.get().drain());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable e) {
+                        synchronized (Connection.this) {
+                            connecting = false;
+                        }
+                        LOGGER.log(Level.FINE, "Failed to connect to broker " + broker, e);
+                    }
+                });
+            } catch (MqttException | RuntimeException e) {
+                synchronized (this) {
+                    connecting = false;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package hudson.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.PeriodicWork;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import javax.annotation.CheckForNull;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent outbox for the MQTT messages sent by {@link MqttResponseStep}.
+ * <p>
+ * Messages are written to a file under {@code JENKINS_HOME/accurev-mqtt-outbox} and delivered in the background, so a
+ * build never waits for the broker and no message is lost while the broker or Jenkins is down. The sender drains the
+ * outbox in batches per broker, handing up to {@code batchSize} messages to the pooled connection at once and removing
+ * every file as soon as its delivery is acknowledged.
+ */
+@Extension
+public class MqttOutbox extends PeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(MqttOutbox.class.getName());
+    private static final int BATCH_SIZE = Integer.getInteger(MqttOutbox.class.getName() + ".batchSize", 100);
+    private static final long RETRY_PERIOD = Long.getLong(MqttOutbox.class.getName() + ".retryPeriod", TimeUnit.SECONDS.toMillis(10));
+    private static final String SUFFIX = ".msg";
+
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    /**
+     * Messages handed to a connection and not acknowledged yet, they are skipped until the delivery completes.
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private boolean draining;
+    private boolean drainAgain;
+
+    public static MqttOutbox get() {
+        return ExtensionList.lookupSingleton(MqttOutbox.class);
+    }
+
+    protected File getDirectory() {
+        return new File(Jenkins.get().getRootDir(), "accurev-mqtt-outbox");
+    }
+
+    protected MqttAsyncClient getClient(String broker) throws MqttException {
+        return MqttConnectionPool.get().getClient(broker);
+    }
+
+    /**
+     * Stores a message in the outbox and triggers its delivery.
+     *
+     * @param broker  the broker, e.g. {@code tcp://host:1883}.
+     * @param topic   the topic.
+     * @param message the message.
+     * @throws IOException if the message could not be stored.
+     */
+    public void enqueue(@NonNull String broker, @NonNull String topic, @NonNull MqttMessage message) throws IOException {
+        File dir = getDirectory();
+        Files.createDirectories(dir.toPath());
+        String name = String.format("%020d", sequence.incrementAndGet());
+        Path tmp = new File(dir, name + ".tmp").toPath();
+        try (OutputStream out = Files.newOutputStream(tmp);
+             DataOutputStream data = new DataOutputStream(out)) {
+            data.writeUTF(broker);
+            data.writeUTF(topic);
+            data.writeInt(message.getQos());
+            data.writeBoolean(message.isRetained());
+            byte[] payload = message.getPayload();
+            data.writeInt(payload.length);
+            data.write(payload);
+        }
+        Files.move(tmp, new File(dir, name + SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        Timer.get().submit(this::drain);
+    }
+
+    /**
+     * @return the number of messages waiting for delivery.
+     */
+    public int size() {
+        return list().size();
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RETRY_PERIOD;
+    }
+
+    @Override
+    protected void doRun() {
+        drain();
+    }
+
+    /**
+     * Hands the pending messages to the broker connections, runs at most once at a time.
+     */
+    void drain() {
+        synchronized (this) {
+            drainAgain = true;
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (!drainAgain) {
+                        draining = false;
+                        return;
+                    }
+                    drainAgain = false;
+                }
+                drainOnce();
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                draining = false;
+            }
+            LOGGER.log(Level.WARNING, "Failed to drain the MQTT outbox", e);
+        }
+    }
+
+    private void drainOnce() {
+        Map<String, List<Pending>> byBroker = new LinkedHashMap<>();
+        for (File file : list()) {
+            if (inFlight.contains(file.getName())) {
+                continue;
+            }
+            Pending pending = read(file);
+            if (pending != null) {
+                byBroker.computeIfAbsent(pending.broker, k -> new ArrayList<>()).add(pending);
+            }
+        }
+        for (Map.Entry<String, List<Pending>> e : byBroker.entrySet()) {
+            MqttAsyncClient client;
+            try {
+                client = getClient(e.getKey());
+            } catch (MqttException x) {
+                LOGGER.log(Level.FINE, "Broker " + e.getKey() + " is not available, " + e.getValue().size() + " messages wait for the next attempt", x);
+                continue;
+            }
+            List<Pending> messages = e.getValue();
+            boolean sent = true;
+            for (Pending pending : messages.subList(0, Math.min(BATCH_SIZE, messages.size()))) {
+                if (!send(client, pending)) {
+                    sent = false;
+                    break;
+                }
+            }
+            if (sent && messages.size() > BATCH_SIZE) {
+                synchronized (this) {
+                    drainAgain = true;
+                }
+            }
+        }
+    }
+
+    private boolean send(MqttAsyncClient client, Pending pending) {
+        String name = pending.file.getName();
+        inFlight.add(name);
+        try {
+            client.publish(pending.topic, pending.message, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    try {
+                        Files.deleteIfExists(pending.file.toPath());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to remove delivered message " + pending.file, e);
+                    } finally {
+                        inFlight.remove(name);
+                    }
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    LOGGER.log(Level.FINE, "Failed to deliver " + name + ", will retry", e);
+                    inFlight.remove(name);
+                }
+            });
+            return true;
+        } catch (MqttException e) {
+            // Usually the in flight window or the disconnected buffer is full, retry with the next drain
+            LOGGER.log(Level.FINE, "Failed to publish " + name + ", will retry", e);
+            inFlight.remove(name);
+            return false;
+        }
+    }
+
+    private List<File> list() {
+        File[] files = getDirectory().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    @CheckForNull
+    static Pending read(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath());
+             DataInputStream data = new DataInputStream(in)) {
+            String broker = data.readUTF();
+            String topic = data.readUTF();
+            int qos = data.readInt();
+            boolean retained = data.readBoolean();
+            byte[] payload = new byte[data.readInt()];
+            data.readFully(payload);
+            MqttMessage message = new MqttMessage(payload);
+            message.setQos(qos);
+            message.setRetained(retained);
+            return new Pending(file, broker, topic, message);
+        } catch (NoSuchFileException e) {
+            // Delivered and removed since it was listed
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Discarding unreadable message " + file, e);
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException x) {
+                LOGGER.log(Level.FINE, "Failed to remove " + file, x);
+            }
+            return null;
+        }
+    }
+
+    private static final class Pending {
+        private final File file;
+        private final String broker;
+        private final String topic;
+        private final MqttMessage message;
+
+        private Pending(File file, String broker, String topic, MqttMessage message) {
+            this.file = file;
+            this.broker = broker;
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+}
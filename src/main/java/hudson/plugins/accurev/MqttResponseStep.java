@@ -16,11 +16,7 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import jenkins.tasks.SimpleBuildStep;
-import org.eclipse.paho.client.mqttv3.MqttClient;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 
@@ -64,30 +60,17 @@ public class MqttResponseStep extends Notifier implements SimpleBuildStep{
 
         final int qualityOfService = 2;
         final String broker = "tcp://" + url;
-        final String clientId = "Jenkins MQTT";
-        final MemoryPersistence persistence = new MemoryPersistence();
 
         try {
-            System.out.println("publishing message to broker: " + broker );
-            final MqttClient sampleClient = new MqttClient(broker, clientId, persistence);
-            final MqttConnectOptions connOpts = new MqttConnectOptions();
-            connOpts.setCleanSession(true);
-            listener.getLogger().println("Connecting to broker: " + broker);
-            sampleClient.connect(connOpts);
-            listener.getLogger().println("Connected");
+            listener.getLogger().println("Publishing message to broker: " + broker);
             listener.getLogger().println("Publishing message: " + content);
             final MqttMessage message = new MqttMessage(content.getBytes("UTF-8"));
             message.setQos(qualityOfService);
-            sampleClient.publish(topic, message);
-            listener.getLogger().println("Message published");
-            sampleClient.disconnect();
-            listener.getLogger().println("Disconnected");
-        } catch (final MqttException me) {
-            listener.getLogger().println("reason " + me.getReasonCode());
-            listener.getLogger().println("msg " + me.getMessage());
-            listener.getLogger().println("loc " + me.getLocalizedMessage());
-            listener.getLogger().println("cause " + me.getCause());
-            listener.getLogger().println("excep " + me);
+            // The outbox delivers the message in the background and keeps it until the broker acknowledged it
+            MqttOutbox.get().enqueue(broker, topic, message);
+            listener.getLogger().println("Message queued");
+        } catch (final IOException e) {
+            listener.getLogger().println("Failed to queue message: " + e);
         }
     }
 
@@ -1,6 +1,9 @@
 package hudson.plugins.accurev.extensions;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Run;
 import hudson.model.TaskListener;
@@ -45,4 +48,38 @@ public abstract class AccurevSCMExtension extends AbstractDescribableImpl<Accure
     public Collection<AccurevStream> getAffectedToBuild(AccurevSCM accurevSCM, Build transToBuild, AccurevClient ac) {
         return Collections.emptyList();
     }
+
+    /**
+     * Called once the transaction to build is known, before the stream is populated.
+     *
+     * @param scm          the SCM.
+     * @param build        the build.
+     * @param accurev      the client.
+     * @param listener     the listener.
+     * @param transToBuild the transaction to build.
+     * @throws IOException          to fail or stop the build.
+     * @throws InterruptedException if interrupted.
+     */
+    public void beforeCheckout(AccurevSCM scm, Run<?, ?> build, AccurevClient accurev, TaskListener listener, Build transToBuild) throws IOException, InterruptedException {
+    }
+
+    /**
+     * Called once the transaction to build is known, before the stream is populated, with the launcher and workspace
+     * of the build for extensions that run {@code accurev} commands of their own. Calls
+     * {@link #beforeCheckout(AccurevSCM, Run, AccurevClient, TaskListener, Build)} by default.
+     *
+     * @param scm          the SCM.
+     * @param build        the build.
+     * @param launcher     the launcher of the build.
+     * @param workspace    the workspace.
+     * @param environment  the environment of the build.
+     * @param accurev      the client, logged in.
+     * @param listener     the listener.
+     * @param transToBuild the transaction to build.
+     * @throws IOException          to fail or stop the build.
+     * @throws InterruptedException if interrupted.
+     */
+    public void beforeCheckout(AccurevSCM scm, Run<?, ?> build, Launcher launcher, FilePath workspace, EnvVars environment, AccurevClient accurev, TaskListener listener, Build transToBuild) throws IOException, InterruptedException {
+        beforeCheckout(scm, build, accurev, listener, transToBuild);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package hudson.plugins.accurev.extensions.impl;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
+import hudson.plugins.accurev.AccurevSCM;
+import hudson.plugins.accurev.ContentFingerprintRegistry;
+import hudson.plugins.accurev.extensions.AccurevSCMExtension;
+import hudson.plugins.accurev.util.Build;
+import hudson.plugins.accurev.util.ContentFingerprint;
+import hudson.plugins.accurev.util.ContentFingerprintAction;
+import jenkins.plugins.accurevclient.AccurevClient;
+import jenkins.plugins.accurevclient.commands.PopulateCommand;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+
+/**
+ * Skips or reuses builds of content that was already built by a related job, e.g. in any stream of the hierarchy of a
+ * multibranch project, see {@link ContentFingerprintRegistry#scope}. See {@link ContentFingerprint} for how the content
+ * of a stream is identified.
+ */
+public class BuildDeduplication extends AccurevSCMExtension {
+
+    public enum Mode {
+        /**
+         * The build stops before populating and is marked as not built.
+         */
+        SKIP,
+        /**
+         * The build continues, with the id of the build of the same content in {@code ACCUREV_CONTENT_BUILT_BY}.
+         */
+        REUSE
+    }
+
+    private Mode mode = Mode.SKIP;
+
+    @DataBoundConstructor
+    public BuildDeduplication() {
+        super();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @DataBoundSetter
+    public void setMode(Mode mode) {
+        this.mode = mode == null ? Mode.SKIP : mode;
+    }
+
+    @Override
+    public void decoratePopulateCommand(AccurevSCM scm, Run<?, ?> build, AccurevClient accurev, TaskListener listener, PopulateCommand cmd) throws IOException, InterruptedException {
+
+    }
+
+    @Override
+    public void beforeCheckout(AccurevSCM scm, Run<?, ?> build, Launcher launcher, FilePath workspace, EnvVars environment, AccurevClient ac, TaskListener listener, Build transToBuild) throws IOException, InterruptedException {
+        if (transToBuild.marked == null || transToBuild.transaction == null || scm.getServerRemoteConfigs().isEmpty()) {
+            return;
+        }
+        String fingerprint = ContentFingerprint.compute(AccurevLauncherDecorator.decorateAll(launcher), workspace,
+                environment, scm.getServerRemoteConfigs().get(0).getUrl(), transToBuild.marked.getName(),
+                transToBuild.transaction.getId());
+        if (fingerprint == null) {
+            listener.getLogger().println("Not deduplicating, the content of " + transToBuild.marked.getName()
+                    + " cannot be identified");
+            return;
+        }
+        deduplicate(build, ContentFingerprintRegistry.scope(build.getParent()), fingerprint, listener);
+    }
+
+    /**
+     * Records the fingerprint of a build, and skips the build if the content was already built in the family of its
+     * job and the mode is {@link Mode#SKIP}.
+     */
+    void deduplicate(Run<?, ?> build, String scope, String fingerprint, TaskListener listener) throws AbortException {
+        Run<?, ?> builtBy = ContentFingerprintRegistry.get().getBuild(scope, fingerprint);
+        if (builtBy == build) {
+            builtBy = null;
+        }
+        build.addAction(new ContentFingerprintAction(fingerprint, builtBy == null ? null : builtBy.getExternalizableId()));
+        if (builtBy == null) {
+            return;
+        }
+        listener.getLogger().println("Content " + fingerprint + " was already built by " + builtBy.getFullDisplayName());
+        if (mode == Mode.SKIP) {
+            build.setResult(Result.NOT_BUILT);
+            throw new AbortException("Skipping build, the content is identical to " + builtBy.getFullDisplayName());
+        }
+    }
+}
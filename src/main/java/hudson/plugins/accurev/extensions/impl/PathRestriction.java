@@ -98,8 +98,18 @@ public class PathRestriction extends AccurevSCMExtension {
 
 
     public Boolean isTransactionExcluded(AccurevTransaction transaction, TaskListener listener) throws IOException, InterruptedException, AccurevException {
-
-        Collection<String> paths = transaction.affectedPaths();
+        return isExcluded(Long.toString(transaction.getId()), transaction.affectedPaths(), listener);
+    }
+
+    /**
+     * Checks the affected paths of a transaction against the included and excluded regions.
+     *
+     * @param id       the id of the transaction, for logging.
+     * @param paths    the affected paths.
+     * @param listener the listener.
+     * @return {@code true} if the transaction should be ignored.
+     */
+    public boolean isExcluded(String id, Collection<String> paths, TaskListener listener) {
         if(paths.isEmpty()) {
             return false;
         }
@@ -136,12 +146,12 @@ public class PathRestriction extends AccurevSCMExtension {
         }
 
         if (excluded.isEmpty() && !included.isEmpty() && includedPaths.isEmpty()) {
-            listener.getLogger().println("Ignored transaction " + transaction.getId()
+            listener.getLogger().println("Ignored transaction " + id
                     + ": No paths matched included region whitelist");
             return true;
         } else if (includedPaths.size() == excludedPaths.size()) {
             // If every affected path is excluded, return true.
-            listener.getLogger().println("Ignored transaction " + transaction.getId()
+            listener.getLogger().println("Ignored transaction " + id
                     + ": Found only excluded paths: "
                     + Util.join(excludedPaths, ", "));
             return true;
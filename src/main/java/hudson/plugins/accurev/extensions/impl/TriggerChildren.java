@@ -9,6 +9,7 @@ import jenkins.plugins.accurevclient.AccurevClient;
 import jenkins.plugins.accurevclient.commands.PopulateCommand;
 import jenkins.plugins.accurevclient.model.AccurevStream;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -16,6 +17,13 @@ import java.util.Collection;
 public class TriggerChildren extends AccurevSCMExtension {
 
     private int depth;
+    /**
+     * Boxed, so configurations saved before it existed load as {@code null} and get the default.
+     */
+    private Integer quietPeriod = DEFAULT_QUIET_PERIOD;
+    private int maxInFlight;
+
+    public static final int DEFAULT_QUIET_PERIOD = 5;
 
     @DataBoundConstructor
     public TriggerChildren(int depth) {
@@ -31,6 +39,37 @@ public class TriggerChildren extends AccurevSCMExtension {
         this.depth = depth;
     }
 
+    /**
+     * @return the seconds the children wait for further triggers before they are built.
+     */
+    public int getQuietPeriod() {
+        return quietPeriod == null ? DEFAULT_QUIET_PERIOD : quietPeriod;
+    }
+
+    @DataBoundSetter
+    public void setQuietPeriod(int quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * @return the maximum of child builds queued or running at once per trigger, {@code 0} for no limit.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @DataBoundSetter
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    protected Object readResolve() {
+        if (quietPeriod == null) {
+            quietPeriod = DEFAULT_QUIET_PERIOD;
+        }
+        return this;
+    }
+
     @Override
     public void decoratePopulateCommand(AccurevSCM scm, Run<?, ?> build, AccurevClient accurev, TaskListener listener, PopulateCommand cmd) throws IOException, InterruptedException {
 
@@ -0,0 +1,132 @@
+package hudson.plugins.accurev.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.Util;
+import hudson.util.ArgumentListBuilder;
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.annotation.CheckForNull;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fingerprint of the effective content of a stream at a transaction.
+ * <p>
+ * The fingerprint hashes the real version of every element the stream shows at the transaction, as listed by a
+ * recursive {@code accurev stat}. The listing already applies everything that shapes the content of a stream: the
+ * default groups along the basis chain, time bases, snapshots and include/exclude rules, and only versions up to the
+ * transaction. A child inheriting everything from its parent shows the same real versions, so it has the same
+ * fingerprint as the parent.
+ */
+public final class ContentFingerprint {
+
+    private ContentFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of a stream.
+     *
+     * @param launcher    the launcher to run {@code accurev stat} with, logged in to the server.
+     * @param pwd         the working directory, or {@code null}.
+     * @param env         the environment.
+     * @param remote      the server.
+     * @param stream      the stream.
+     * @param transaction the transaction that will be built, newer transactions are ignored.
+     * @return the fingerprint as hex string, or {@code null} if the listing has elements without a real version, so
+     * the content cannot be identified.
+     * @throws IOException          if the elements could not be listed.
+     * @throws InterruptedException if interrupted.
+     */
+    @CheckForNull
+    public static String compute(@NonNull Launcher launcher, @CheckForNull FilePath pwd, @NonNull EnvVars env,
+                                 @NonNull String remote, @NonNull String stream, long transaction)
+            throws IOException, InterruptedException {
+        ArgumentListBuilder args = new ArgumentListBuilder("accurev", "stat", "-H", remote, "-s", stream,
+                "-t", Long.toString(transaction), "-a", "-fx");
+        Proc proc = launcher.launch()
+                .cmds(args).envs(env).pwd(pwd).readStdout().readStderr().quiet(true).start();
+        List<String> versions;
+        try (InputStream in = proc.getStdout()) {
+            versions = versions(in);
+        } catch (IOException e) {
+            if (proc.join() != 0) {
+                throw new IOException("Failed to list " + stream + " at transaction " + transaction + ": "
+                        + IOUtils.toString(proc.getStderr(), StandardCharsets.UTF_8).trim(), e);
+            }
+            throw e;
+        }
+        if (proc.join() != 0) {
+            throw new IOException("Failed to list " + stream + " at transaction " + transaction + ": "
+                    + IOUtils.toString(proc.getStderr(), StandardCharsets.UTF_8).trim());
+        }
+        if (versions == null) {
+            return null;
+        }
+        Collections.sort(versions);
+        return digest(versions);
+    }
+
+    /**
+     * @return the location and real version of every element in the XML output of {@code accurev stat -fx}, or
+     * {@code null} if an element has no real version.
+     */
+    @CheckForNull
+    static List<String> versions(@NonNull InputStream xml) throws IOException {
+        List<String> versions = new ArrayList<>();
+        boolean[] unversioned = new boolean[1];
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.newSAXParser().parse(xml, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if (!"element".equals(qName)) {
+                        return;
+                    }
+                    String location = attributes.getValue("location");
+                    String status = attributes.getValue("status");
+                    if (location == null || (status != null && status.contains("defunct"))) {
+                        return;
+                    }
+                    String real = attributes.getValue("Real");
+                    if (real == null) {
+                        unversioned[0] = true;
+                        return;
+                    }
+                    versions.add(location + " " + real);
+                }
+            });
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse the element listing", e);
+        }
+        return unversioned[0] ? null : versions;
+    }
+
+    static String digest(List<String> layers) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String layer : layers) {
+                sha.update(layer.getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) '\n');
+            }
+            return Util.toHexString(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package hudson.plugins.accurev.util;
+
+import hudson.model.InvisibleAction;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Records the {@link ContentFingerprint} of the content a build checked out.
+ */
+public class ContentFingerprintAction extends InvisibleAction {
+
+    private final String fingerprint;
+    @CheckForNull
+    private final String builtBy;
+
+    public ContentFingerprintAction(String fingerprint, @CheckForNull String builtBy) {
+        this.fingerprint = fingerprint;
+        this.builtBy = builtBy;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the id of the build which already built the same content, or {@code null}.
+     */
+    @CheckForNull
+    public String getBuiltBy() {
+        return builtBy;
+    }
+}
@@ -2,6 +2,7 @@ package hudson.plugins.accurev.util;
 
 import hudson.Extension;
 import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevQueryCoalescer;
 import hudson.plugins.accurev.StreamSpec;
 import jenkins.plugins.accurevclient.AccurevClient;
 
@@ -30,26 +31,32 @@ public class DefaultBuildChooser extends BuildChooser {
         }
 
         Collection<AccurevTransaction> cAT;
+        final StreamSpec spec = ss;
+        // Jobs triggered by the same promote ask the same questions, share the answers
+        String scope = AccurevQueryCoalescer.scope(accurevSCM);
         //Only look at changes since current transaction when building Staging Streams.
 
-        if (ac.fetchStream(ss.getDepot(),ss.getName()).getType().equals(AccurevStreamType.Staging)){
-            AccurevTransactions accurevTransactions = ac.getActiveTransactions(ss.getName());
+        if (AccurevQueryCoalescer.query(scope, "fetchStream", () -> ac.fetchStream(spec.getDepot(), spec.getName()),
+                spec.getDepot(), spec.getName()).getType().equals(AccurevStreamType.Staging)){
+            AccurevTransactions accurevTransactions = AccurevQueryCoalescer.query(scope, "getActiveTransactions",
+                    () -> ac.getActiveTransactions(spec.getName()), spec.getName());
             cAT = accurevTransactions.getTransactions();
         } else {
             long defaultBuild = 0;
+            long since = data.lastBuild != null ? data.lastBuild.transaction.getId() : defaultBuild;
             if(bound != 0) {
-                cAT = ac.getUpdatesFromAncestors(
-                        ss.getDepot(),
-                        ss.getName(),
-                        (data.lastBuild != null ? data.lastBuild.transaction.getId() : defaultBuild),
+                cAT = AccurevQueryCoalescer.query(scope, "getUpdatesFromAncestors", () -> ac.getUpdatesFromAncestors(
+                        spec.getDepot(),
+                        spec.getName(),
+                        since,
                         Long.toString(bound) // Compare to the Transaction ID of the last build we began.
-                );
+                ), spec.getDepot(), spec.getName(), since, bound);
             } else {
-                cAT = ac.getUpdatesFromAncestors(
-                        ss.getDepot(),
-                        ss.getName(),
-                        (data.lastBuild != null ? data.lastBuild.transaction.getId() : defaultBuild)
-                );
+                cAT = AccurevQueryCoalescer.query(scope, "getUpdatesFromAncestors", () -> ac.getUpdatesFromAncestors(
+                        spec.getDepot(),
+                        spec.getName(),
+                        since
+                ), spec.getDepot(), spec.getName(), since);
             }
         }
 
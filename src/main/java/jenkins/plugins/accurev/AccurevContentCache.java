@@ -0,0 +1,241 @@
+package jenkins.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Content of files read through {@link AccurevSCMFileSystem}, shared by all file systems of the controller.
+ * <p>
+ * Every file is kept as a cache file on disk, written straight from the CLI output, and read back through a memory
+ * mapping, so the content is never held in the heap. Content at a transaction never changes, so entries are only
+ * evicted, least recently used first, once the cache files take more than {@code maxBytes}.
+ * <p>
+ * Entries are opened under the lock of the cache, so an entry cannot be evicted between looking it up and mapping it.
+ * Cache files that cannot be deleted on eviction because they are still mapped, as on Windows, are deleted later.
+ */
+public class AccurevContentCache {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevContentCache.class.getName());
+    private static AccurevContentCache instance;
+
+    private final File dir;
+    private final long maxBytes;
+    private final Map<String, File> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Evicted cache files which could not be deleted yet.
+     */
+    private final List<File> evicted = new ArrayList<>();
+    private long size;
+
+    AccurevContentCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        // Nothing tracks the files of a previous run, start empty
+        Util.deleteContentsRecursive(dir);
+    }
+
+    public static synchronized AccurevContentCache get() {
+        if (instance == null) {
+            try {
+                instance = new AccurevContentCache(new File(Jenkins.get().getRootDir(), "caches/accurev-content"),
+                        Long.getLong(AccurevContentCache.class.getName() + ".maxBytes", 512L * 1024 * 1024));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create the Accurev content cache", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param principal the credentials the content was read with, see {@link AccurevSCMFileSystem}. Access to elements
+     *                  is checked per user, so content is only shared between readers with the same credentials.
+     * @return the key of a file at a transaction of a stream.
+     */
+    static String key(String remote, String stream, long transaction, String principal, String path) {
+        return remote + '|' + stream + '|' + transaction + '|' + principal + '|' + path;
+    }
+
+    /**
+     * @return a new file in the cache directory, to write the content to before it is added with {@link #put}.
+     * @throws IOException if the file could not be created.
+     */
+    @NonNull
+    public File newTempFile() throws IOException {
+        Files.createDirectories(dir.toPath());
+        return File.createTempFile("content", ".tmp", dir);
+    }
+
+    /**
+     * @return a new directory in the cache directory, for commands writing several files which are then added with
+     * {@link #put}.
+     * @throws IOException if the directory could not be created.
+     */
+    @NonNull
+    public File newTempDirectory() throws IOException {
+        Files.createDirectories(dir.toPath());
+        return Files.createTempDirectory(dir.toPath(), "content").toFile();
+    }
+
+    /**
+     * @param key the key of the content.
+     * @return the cache file of the content, or {@code null} if not cached.
+     */
+    @CheckForNull
+    public synchronized File get(@NonNull String key) {
+        File file = entries.get(key);
+        if (file != null && !file.isFile()) {
+            entries.remove(key);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Opens cached content.
+     *
+     * @param key the key of the content.
+     * @return the content, or {@code null} if not cached.
+     * @throws IOException if the cache file could not be opened.
+     */
+    @CheckForNull
+    public synchronized InputStream open(@NonNull String key) throws IOException {
+        File file = get(key);
+        return file == null ? null : open(file);
+    }
+
+    /**
+     * Adds content to the cache and opens it, before it can be evicted by other callers.
+     *
+     * @param key     the key of the content.
+     * @param content a file from {@link #newTempFile()}, it is moved into the cache.
+     * @return the content.
+     * @throws IOException if the file could not be moved or opened.
+     */
+    @NonNull
+    public synchronized InputStream putAndOpen(@NonNull String key, @NonNull File content) throws IOException {
+        return open(put(key, content));
+    }
+
+    /**
+     * Adds content to the cache.
+     *
+     * @param key     the key of the content.
+     * @param content a file from {@link #newTempFile()}, it is moved into the cache.
+     * @return the cache file.
+     * @throws IOException if the file could not be moved.
+     */
+    @NonNull
+    public synchronized File put(@NonNull String key, @NonNull File content) throws IOException {
+        evicted.removeIf(f -> f.delete() || !f.exists());
+        // A unique name, the file of an earlier entry with the same key may still be mapped
+        File file = File.createTempFile(Util.getDigestOf(key), ".bin", dir);
+        Files.move(content.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        File old = entries.put(key, file);
+        if (old != null) {
+            size -= old.length();
+            delete(old);
+        }
+        size += file.length();
+        for (Iterator<Map.Entry<String, File>> it = entries.entrySet().iterator(); size > maxBytes && it.hasNext(); ) {
+            Map.Entry<String, File> e = it.next();
+            if (e.getValue().equals(file)) {
+                continue;
+            }
+            size -= e.getValue().length();
+            it.remove();
+            delete(e.getValue());
+        }
+        return file;
+    }
+
+    private void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            LOGGER.log(Level.FINE, "Could not delete {0} yet, it is still in use", file);
+            evicted.add(file);
+        }
+    }
+
+    /**
+     * @return the bytes held by the cache.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Opens a cache file through a memory mapping.
+     *
+     * @param file the file.
+     * @return the content.
+     * @throws IOException if the file could not be opened.
+     */
+    @NonNull
+    public static InputStream open(@NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                return new FileInputStream(file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private MappedInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package jenkins.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMFileSystem;
+import jenkins.scm.api.SCMHead;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.workflow.libs.LibraryRetriever;
+import org.jenkinsci.plugins.workflow.libs.LibraryRetrieverDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retrieves Pipeline shared libraries from an Accurev stream through {@link AccurevSCMFileSystem}, without a workspace.
+ * <p>
+ * The library version is the name of the stream. Every library is extracted once per stream and transaction into a
+ * cache directory on the controller, {@code JENKINS_HOME/caches/accurev-libraries}, and copied from there into the
+ * library directory of every build using it. Only the {@code maxEntries} most recently used libraries are kept,
+ * libraries used within the last {@code minIdleMinutes} are never evicted, as builds may still be copying them.
+ */
+public class AccurevLibraryRetriever extends LibraryRetriever {
+
+    private static final Logger LOGGER = Logger.getLogger(AccurevLibraryRetriever.class.getName());
+    static int MAX_ENTRIES = Integer.getInteger(AccurevLibraryRetriever.class.getName() + ".maxEntries", 20);
+    static long MIN_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Long.getLong(AccurevLibraryRetriever.class.getName() + ".minIdleMinutes", 10));
+    /**
+     * The locks of the libraries being extracted, a lock is kept as long as a thread holds or waits for it.
+     */
+    private static final Map<String, KeyLock> LOCKS = new HashMap<>();
+
+    private final AccurevSCMSource source;
+
+    @DataBoundConstructor
+    public AccurevLibraryRetriever(AccurevSCMSource source) {
+        this.source = source;
+    }
+
+    public AccurevSCMSource getSource() {
+        return source;
+    }
+
+    @Override
+    public void retrieve(@NonNull String name, @NonNull String version, boolean changelog, @NonNull FilePath target,
+                         @NonNull Run<?, ?> run, @NonNull TaskListener listener) throws Exception {
+        retrieve(name, version, target, run, listener);
+    }
+
+    @Override
+    public void retrieve(@NonNull String name, @NonNull String version, @NonNull FilePath target,
+                         @NonNull Run<?, ?> run, @NonNull TaskListener listener) throws Exception {
+        SCMFileSystem fs = SCMFileSystem.of(source, new SCMHead(version));
+        if (!(fs instanceof AccurevSCMFileSystem)) {
+            throw new AbortException("Could not read library " + name + " from stream " + version + " of " + source.getRemote());
+        }
+        AccurevSCMFileSystem accurevFs = (AccurevSCMFileSystem) fs;
+        if (accurevFs.getAccurevClient().getCredentials() == null) {
+            throw new AbortException("Could not read library " + name + " from stream " + version + " of "
+                    + source.getRemote() + ", no credentials found for " + source.getCredentialsId());
+        }
+        long transaction = accurevFs.lastModified();
+        File library = extract(accurevFs, transaction, listener);
+        listener.getLogger().println("Loading library " + name + "@" + version + " at transaction " + transaction);
+        new FilePath(library).copyRecursiveTo(target);
+    }
+
+    static File getCacheDir() {
+        return new File(Jenkins.get().getRootDir(), "caches/accurev-libraries");
+    }
+
+    /**
+     * Extracts the stream at a transaction into the cache, unless it already was.
+     */
+    private static File extract(AccurevSCMFileSystem fs, long transaction, TaskListener listener) throws IOException, InterruptedException {
+        File cache = getCacheDir();
+        String key = fs.getRemote() + '|' + fs.getHead() + '|' + transaction;
+        File library = new File(cache, Util.getDigestOf(key));
+        KeyLock lock;
+        synchronized (LOCKS) {
+            lock = LOCKS.computeIfAbsent(key, k -> new KeyLock());
+            lock.users++;
+        }
+        try {
+            synchronized (lock) {
+                if (library.isDirectory()) {
+                    // Keep recently used libraries from being evicted
+                    touch(library);
+                    return library;
+                }
+                listener.getLogger().println("Fetching " + fs.getHead() + " at transaction " + transaction);
+                if (fs.listing() == null) {
+                    throw new AbortException("Could not list " + fs.getHead() + " at transaction " + transaction
+                            + ", no credentials to log in to " + fs.getRemote());
+                }
+                Files.createDirectories(cache.toPath());
+                File tmp = Files.createTempDirectory(cache.toPath(), "extract").toFile();
+                try {
+                    List<SCMFile> files = new ArrayList<>();
+                    collect(fs.getRoot(), files);
+                    if (files.isEmpty()) {
+                        throw new AbortException("Stream " + fs.getHead() + " has no files at transaction " + transaction);
+                    }
+                    // One populate of the whole stream instead of a read per file
+                    fs.prefetch(Collections.singletonList(""));
+                    for (SCMFile file : files) {
+                        File out = new File(tmp, file.getPath());
+                        Files.createDirectories(out.getParentFile().toPath());
+                        try (InputStream in = file.content()) {
+                            Files.copy(in, out.toPath());
+                        }
+                    }
+                    Files.move(tmp.toPath(), library.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    touch(library);
+                } finally {
+                    if (tmp.exists()) {
+                        Util.deleteRecursive(tmp);
+                    }
+                }
+            }
+        } finally {
+            synchronized (LOCKS) {
+                if (--lock.users == 0) {
+                    LOCKS.remove(key);
+                }
+            }
+        }
+        evict(cache);
+        return library;
+    }
+
+    private static void touch(File library) {
+        if (!library.setLastModified(System.currentTimeMillis())) {
+            LOGGER.log(Level.FINE, "Could not touch {0}", library);
+        }
+    }
+
+    private static void collect(SCMFile dir, List<SCMFile> files) throws IOException, InterruptedException {
+        for (SCMFile child : dir.children()) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used libraries beyond {@code maxEntries}, except those used within
+     * {@code minIdleMinutes}.
+     */
+    private static synchronized void evict(File cache) {
+        File[] libraries = cache.listFiles(file -> file.isDirectory() && !file.getName().startsWith("extract"));
+        if (libraries == null || libraries.length <= MAX_ENTRIES) {
+            return;
+        }
+        Arrays.sort(libraries, Comparator.comparingLong(File::lastModified));
+        long idleSince = System.currentTimeMillis() - MIN_IDLE_MILLIS;
+        for (File library : Arrays.asList(libraries).subList(0, libraries.length - MAX_ENTRIES)) {
+            if (library.lastModified() > idleSince) {
+                // Sorted by last use, the remaining ones were used even more recently
+                break;
+            }
+            try {
+                Util.deleteRecursive(library);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to remove cached library " + library, e);
+            }
+        }
+    }
+
+    /**
+     * The lock of a library, with the number of threads holding or waiting for it.
+     */
+    private static final class KeyLock {
+        private int users;
+    }
+
+    @Symbol("accurev")
+    @Extension(optional = true)
+    public static class DescriptorImpl extends LibraryRetrieverDescriptor {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Accurev stream (lightweight)";
+        }
+    }
+}
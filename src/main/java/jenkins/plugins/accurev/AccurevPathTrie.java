@@ -0,0 +1,168 @@
+package jenkins.plugins.accurev;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.annotation.CheckForNull;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The elements of a stream at a transaction, as a path trie.
+ * <p>
+ * The trie is built once from a recursive {@code accurev stat -fx} listing and then only read, every directory keeps
+ * the names of its children in a sorted array, so a listing of a few hundred thousand elements stays small in memory
+ * and lookups need no locking.
+ */
+public final class AccurevPathTrie {
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    private final Node root;
+
+    private AccurevPathTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses the XML output of {@code accurev stat -fx}.
+     *
+     * @param xml the output.
+     * @return the trie.
+     * @throws IOException if the output could not be read or parsed.
+     */
+    @NonNull
+    public static AccurevPathTrie parse(@NonNull InputStream xml) throws IOException {
+        Builder root = new Builder(true);
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.newSAXParser().parse(xml, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if (!"element".equals(qName)) {
+                        return;
+                    }
+                    String location = attributes.getValue("location");
+                    String status = attributes.getValue("status");
+                    if (location == null || (status != null && status.contains("defunct"))) {
+                        return;
+                    }
+                    root.add(split(location), "yes".equals(attributes.getValue("dir")));
+                }
+            });
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to parse the element listing", e);
+        }
+        return new AccurevPathTrie(root.compact());
+    }
+
+    /**
+     * @param path the path, relative to the root of the stream.
+     * @return {@code true} if the path is a directory of the stream.
+     */
+    public boolean isDirectory(@NonNull String path) {
+        Node node = find(path);
+        return node != null && node.directory;
+    }
+
+    /**
+     * @param path the path, relative to the root of the stream.
+     * @return {@code true} if the path is an element of the stream.
+     */
+    public boolean exists(@NonNull String path) {
+        return find(path) != null;
+    }
+
+    /**
+     * @param path the path of a directory, relative to the root of the stream.
+     * @return the names of the children in order, empty if the path is no directory.
+     */
+    @NonNull
+    public List<String> list(@NonNull String path) {
+        Node node = find(path);
+        return node == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(node.names));
+    }
+
+    @CheckForNull
+    private Node find(String path) {
+        Node node = root;
+        for (String name : split(path)) {
+            int i = Arrays.binarySearch(node.names, name);
+            if (i < 0) {
+                return null;
+            }
+            node = node.children[i];
+        }
+        return node;
+    }
+
+    private static String[] split(String path) {
+        String p = path.replace('\\', '/');
+        if (p.startsWith("/./")) {
+            p = p.substring(3);
+        } else if (p.equals("/.")) {
+            p = "";
+        }
+        return Arrays.stream(p.split("/")).filter(s -> !s.isEmpty() && !s.equals(".")).toArray(String[]::new);
+    }
+
+    private static final class Node {
+        private final boolean directory;
+        private final String[] names;
+        private final Node[] children;
+
+        private Node(boolean directory, String[] names, Node[] children) {
+            this.directory = directory;
+            this.names = names;
+            this.children = children;
+        }
+    }
+
+    private static final class Builder {
+        private boolean directory;
+        private Map<String, Builder> children;
+
+        private Builder(boolean directory) {
+            this.directory = directory;
+        }
+
+        private void add(String[] path, boolean dir) {
+            Builder node = this;
+            for (int i = 0; i < path.length; i++) {
+                boolean last = i == path.length - 1;
+                if (node.children == null) {
+                    node.children = new TreeMap<>();
+                }
+                // Parents may be listed after their children, they are directories either way
+                node.directory = true;
+                node = node.children.computeIfAbsent(path[i], k -> new Builder(false));
+                if (last) {
+                    node.directory |= dir;
+                }
+            }
+        }
+
+        private Node compact() {
+            if (children == null) {
+                return new Node(directory, NO_NAMES, NO_NODES);
+            }
+            String[] names = children.keySet().toArray(NO_NAMES);
+            Node[] nodes = new Node[names.length];
+            for (int i = 0; i < names.length; i++) {
+                nodes[i] = children.get(names[i]).compact();
+            }
+            return new Node(true, names, nodes);
+        }
+    }
+}
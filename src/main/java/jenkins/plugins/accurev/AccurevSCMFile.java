@@ -1,18 +1,11 @@
 package jenkins.plugins.accurev;
 
-import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import jenkins.scm.api.SCMFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,27 +33,15 @@ public class AccurevSCMFile extends SCMFile {
     @Override
     public Iterable<SCMFile> children() throws IOException, InterruptedException {
         List<SCMFile> result = new ArrayList<>();
-        Path path = Paths.get(fs.getRoot().getPath());
-        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    if(file.getFileName() != null) {
-                        Path filename = file.getFileName();
-                        if(filename!= null) result.add(new AccurevSCMFile(fs, AccurevSCMFile.this, filename.toString(), Type.REGULAR_FILE));
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir,
-                                                          IOException exc) {
-                    if(dir.getFileName() != null) {
-                        Path dirname = dir.getFileName();
-                        if(dirname != null) result.add(new AccurevSCMFile(fs, AccurevSCMFile.this, dirname.toString(), Type.DIRECTORY));
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-
+        AccurevPathTrie listing = fs.listing();
+        if (listing == null) {
+            return result;
+        }
+        String path = getPath();
+        for (String name : listing.list(path)) {
+            String child = path.isEmpty() ? name : path + "/" + name;
+            result.add(new AccurevSCMFile(fs, this, name, listing.isDirectory(child) ? Type.DIRECTORY : Type.REGULAR_FILE));
+        }
         return result;
     }
 
@@ -72,20 +53,25 @@ public class AccurevSCMFile extends SCMFile {
     @NonNull
     @Override
     protected Type type() throws IOException, InterruptedException {
-        return fileType;
+        if (isRoot()) {
+            return Type.DIRECTORY;
+        }
+        AccurevPathTrie listing = fs.listing();
+        if (listing == null) {
+            return fileType;
+        }
+        String path = getPath();
+        if (!listing.exists(path)) {
+            return Type.NONEXISTENT;
+        }
+        return listing.isDirectory(path) ? Type.DIRECTORY : Type.REGULAR_FILE;
     }
 
     @Override
     public InputStream content() throws IOException, InterruptedException {
         if(fs.getAccurevClient() != null) {
-            StandardUsernamePasswordCredentials cred = fs.getAccurevClient().getCredentials();
-
-            if (cred != null) {
-                fs.getAccurevClient().login().username(cred.getUsername()).password(cred.getPassword()).execute();
-                String file = fs.getAccurevClient().getFile(fs.getHead(), getPath(), Long.toString(fs.lastModified()));
-                return new ByteArrayInputStream(file.getBytes("UTF-8"));
-            }
+            return fs.open(getPath());
         }
-        return new ByteArrayInputStream("".getBytes("UTF-8"));
+        return new ByteArrayInputStream(new byte[0]);
     }
 }
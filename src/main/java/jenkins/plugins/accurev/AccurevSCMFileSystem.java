@@ -4,15 +4,24 @@ import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
 import hudson.Extension;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.Util;
 import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
 import hudson.plugins.accurev.AccurevSCM;
 import hudson.plugins.accurev.ServerRemoteConfig;
 import hudson.plugins.accurev.StreamSpec;
 import hudson.scm.SCM;
 import hudson.scm.SCMDescriptor;
 import hudson.security.ACL;
+import hudson.util.ArgumentListBuilder;
 import jenkins.plugins.accurevclient.Accurev;
 import jenkins.plugins.accurevclient.AccurevClient;
 import jenkins.scm.api.SCMFile;
@@ -21,19 +30,65 @@ import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.SCMRevision;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceDescriptor;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 
 public class AccurevSCMFileSystem extends SCMFileSystem {
 
+    private static final Logger LOGGER = Logger.getLogger(AccurevSCMFileSystem.class.getName());
+    /**
+     * The errors of the CLI when the session token expired, was ended on the server or is missing.
+     */
+    private static final Pattern AUTH_ERROR = Pattern.compile(
+            "(?i)not (currently )?logged in|not authenticated|session (token )?(has )?(expired|invalid|is not valid)");
+
+    private static final String ACCUREV_EXE = System.getProperty(AccurevSCMFileSystem.class.getName() + ".accurevExe", "accurev");
+    /**
+     * File systems by remote, stream, transaction and credentials. A file system is pinned to its transaction, so it
+     * can be shared by the indexing probes and the builds of the same revision.
+     */
+    private static final Cache<String, AccurevSCMFileSystem> FILE_SYSTEMS = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong(AccurevSCMFileSystem.class.getName() + ".cacheSize", 200))
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+    /**
+     * Element listings by remote, stream, transaction and credentials, only softly held as they can be large. The
+     * listing depends on what the user of the credentials is allowed to see.
+     */
+    private static final Cache<String, AccurevPathTrie> LISTINGS = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong(AccurevSCMFileSystem.class.getName() + ".listingCacheSize", 50))
+            .softValues()
+            .build();
+
     public String getHead() {
         return head;
     }
 
     private final String head;
     private final String remote;
-//    private final Long transactionId;
+    private volatile Long transactionId;
+    private volatile boolean loggedIn;
 
     public AccurevClient getAccurevClient() {
         return accurevClient;
@@ -46,22 +101,255 @@ public class AccurevSCMFileSystem extends SCMFileSystem {
         this.remote = remote;
         this.head = head;
         this.accurevClient = accurevClient;
+        this.transactionId = rev != null ? rev.getHash() : null;
+    }
+
+    /**
+     * Returns a cached file system for the same remote, stream, transaction and credentials, or pins and caches this one.
+     */
+    static AccurevSCMFileSystem shared(AccurevSCMFileSystem fs) throws IOException, InterruptedException {
+        StandardUsernamePasswordCredentials credentials = fs.accurevClient.getCredentials();
+        if (credentials == null) {
+            return fs;
+        }
+        String key = fs.remote + '|' + fs.head + '|' + fs.lastModified() + '|' + principal(credentials);
+        AccurevSCMFileSystem cached = FILE_SYSTEMS.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        FILE_SYSTEMS.put(key, fs);
+        return fs;
+    }
+
+    /**
+     * @return the credentials id and user, part of the keys of everything cached on behalf of the credentials.
+     */
+    private static String principal(StandardUsernamePasswordCredentials credentials) {
+        return credentials.getId() + '|' + credentials.getUsername();
     }
 
+    /**
+     * Logs in once per file system, subsequent reads reuse the session until a command fails because it expired, see
+     * {@link #withSession(Command)}.
+     */
+    @CheckForNull
+    private StandardUsernamePasswordCredentials login() {
+        StandardUsernamePasswordCredentials credentials = accurevClient.getCredentials();
+        if (credentials != null && !loggedIn) {
+            synchronized (this) {
+                if (!loggedIn) {
+                    accurevClient.login().username(credentials.getUsername()).password(credentials.getPassword()).execute();
+                    loggedIn = true;
+                }
+            }
+        }
+        return credentials;
+    }
+
+    /**
+     * Runs a command, and if it fails because the session expired or was ended on the server, logs in again and
+     * retries it once.
+     */
+    private <T> T withSession(Command<T> command) throws IOException, InterruptedException {
+        try {
+            return command.run();
+        } catch (SessionExpiredException e) {
+            LOGGER.log(Level.FINE, "Logging in to {0} again: {1}", new Object[]{remote, e.getMessage()});
+            loggedIn = false;
+            login();
+            return command.run();
+        }
+    }
+
+    /**
+     * @return the exception for a failed command, a {@link SessionExpiredException} if the error says the session is
+     * not valid any more.
+     */
+    private static IOException failure(String message, String err) {
+        return AUTH_ERROR.matcher(err).find() ? new SessionExpiredException(message + ": " + err)
+                : new IOException(message + ": " + err);
+    }
+
+    /**
+     * @return the transaction the file system is pinned to, resolved once from the head of the stream if no revision was given.
+     */
     @SuppressWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
     @Override
     public long lastModified() throws IOException, InterruptedException {
-        if(accurevClient.getCredentials() != null) {
-            StandardUsernamePasswordCredentials credentials = accurevClient.getCredentials();
-            if(credentials != null) {
-                accurevClient.login().username(credentials.getUsername()).password(credentials.getPassword()).execute();
-                long id = accurevClient.fetchTransaction(head).getId();
-                return id;
+        Long id = transactionId;
+        if (id != null) {
+            return id;
+        }
+        if (login() != null) {
+            synchronized (this) {
+                if (transactionId == null) {
+                    transactionId = accurevClient.fetchTransaction(head).getId();
+                }
+                return transactionId;
             }
         }
         return getRoot().lastModified();
     }
 
+    /**
+     * Opens a file at the pinned transaction, through the {@link AccurevContentCache}.
+     * <p>
+     * On a cache miss the output of {@code accurev cat} is written straight to a cache file, so the content is never
+     * decoded or held in the heap, and binary files are returned unchanged.
+     *
+     * @param path the path of the file.
+     * @return the content.
+     * @throws IOException          if the file could not be read.
+     * @throws InterruptedException if interrupted.
+     */
+    @NonNull
+    public InputStream open(@NonNull String path) throws IOException, InterruptedException {
+        StandardUsernamePasswordCredentials credentials = login();
+        if (credentials == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        long transaction = lastModified();
+        String key = AccurevContentCache.key(remote, head, transaction, principal(credentials), path);
+        AccurevContentCache cache = AccurevContentCache.get();
+        InputStream in = cache.open(key);
+        if (in != null) {
+            return in;
+        }
+        File tmp = cache.newTempFile();
+        try {
+            withSession(() -> {
+                cat(path, transaction, tmp);
+                return null;
+            });
+            return cache.putAndOpen(key, tmp);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Fetches a set of files into the {@link AccurevContentCache} with a single {@code accurev pop}, so later reads of
+     * these files through {@link #open(String)} are served from the cache. Directories are fetched with their whole
+     * subtree, paths which are already cached are skipped.
+     *
+     * @param paths the paths of the files or directories.
+     * @throws IOException          if the files could not be fetched.
+     * @throws InterruptedException if interrupted.
+     */
+    public void prefetch(@NonNull Collection<String> paths) throws IOException, InterruptedException {
+        StandardUsernamePasswordCredentials credentials = login();
+        if (credentials == null) {
+            return;
+        }
+        long transaction = lastModified();
+        String principal = principal(credentials);
+        AccurevPathTrie listing = listing();
+        AccurevContentCache cache = AccurevContentCache.get();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String path : paths) {
+            String p = StringUtils.removeStart(StringUtils.removeStart(path, "/./"), "/");
+            if (listing != null && listing.isDirectory(p)) {
+                missing.add(p);
+            } else if (cache.get(AccurevContentCache.key(remote, head, transaction, principal, p)) == null) {
+                missing.add(p);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Path dir = cache.newTempDirectory().toPath();
+        try {
+            ArgumentListBuilder args = new ArgumentListBuilder(ACCUREV_EXE, "pop", "-H", remote, "-v", head,
+                    "-t", Long.toString(transaction), "-L", dir.toString(), "-O", "-R");
+            for (String p : missing) {
+                args.add(p.isEmpty() ? "/." : "/./" + p);
+            }
+            withSession(() -> {
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                int exitCode = launcher().launch()
+                        .cmds(args).stdout(TaskListener.NULL).stderr(err).quiet(true).join();
+                if (exitCode != 0) {
+                    throw failure("Failed to populate " + missing + " at transaction " + transaction + " of " + head,
+                            err.toString(StandardCharsets.UTF_8.name()).trim());
+                }
+                return null;
+            });
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String p = dir.relativize(file).toString().replace(File.separatorChar, '/');
+                    cache.put(AccurevContentCache.key(remote, head, transaction, principal, p), file.toFile());
+                }
+            }
+        } finally {
+            Util.deleteRecursive(dir.toFile());
+        }
+    }
+
+    private void cat(String path, long transaction, File target) throws IOException, InterruptedException {
+        ArgumentListBuilder args = new ArgumentListBuilder(ACCUREV_EXE, "cat", "-H", remote, "-v", head,
+                "-t", Long.toString(transaction), path.startsWith("/./") ? path : "/./" + path);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int exitCode;
+        try (OutputStream out = new FileOutputStream(target)) {
+            exitCode = launcher().launch()
+                    .cmds(args).stdout(out).stderr(err).quiet(true).join();
+        }
+        if (exitCode != 0) {
+            throw failure("Failed to read " + path + " at transaction " + transaction + " of " + head,
+                    err.toString(StandardCharsets.UTF_8.name()).trim());
+        }
+    }
+
+    /**
+     * Lists all elements of the stream at the pinned transaction with a single recursive {@code accurev stat}, the
+     * listing is cached per revision and credentials.
+     *
+     * @return the elements, or {@code null} if there are no credentials to list them with.
+     * @throws IOException          if the elements could not be listed.
+     * @throws InterruptedException if interrupted.
+     */
+    @CheckForNull
+    public AccurevPathTrie listing() throws IOException, InterruptedException {
+        StandardUsernamePasswordCredentials credentials = login();
+        if (credentials == null) {
+            return null;
+        }
+        long transaction = lastModified();
+        String key = remote + '|' + head + '|' + transaction + '|' + principal(credentials);
+        AccurevPathTrie listing = LISTINGS.getIfPresent(key);
+        if (listing == null) {
+            listing = withSession(() -> stat(transaction));
+            LISTINGS.put(key, listing);
+        }
+        return listing;
+    }
+
+    private AccurevPathTrie stat(long transaction) throws IOException, InterruptedException {
+        ArgumentListBuilder args = new ArgumentListBuilder(ACCUREV_EXE, "stat", "-H", remote, "-s", head,
+                "-t", Long.toString(transaction), "-a", "-fx");
+        Proc proc = launcher().launch()
+                .cmds(args).readStdout().readStderr().quiet(true).start();
+        AccurevPathTrie listing;
+        try (InputStream in = proc.getStdout()) {
+            listing = AccurevPathTrie.parse(in);
+        } catch (IOException e) {
+            if (proc.join() != 0) {
+                throw (IOException) failure("Failed to list " + head + " at transaction " + transaction,
+                        IOUtils.toString(proc.getStderr(), StandardCharsets.UTF_8).trim()).initCause(e);
+            }
+            throw e;
+        }
+        if (proc.join() != 0) {
+            throw failure("Failed to list " + head + " at transaction " + transaction,
+                    IOUtils.toString(proc.getStderr(), StandardCharsets.UTF_8).trim());
+        }
+        return listing;
+    }
+
+    private static Launcher launcher() {
+        return AccurevLauncherDecorator.decorateAll(new Launcher.LocalLauncher(TaskListener.NULL));
+    }
+
     @Override
     public AccurevSCMSource.SCMRevisionImpl getRevision() {
         return (AccurevSCMSource.SCMRevisionImpl) super.getRevision();
@@ -77,6 +365,19 @@ public class AccurevSCMFileSystem extends SCMFileSystem {
         return remote;
     }
 
+    private interface Command<T> {
+        T run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * A command failed because the session is not valid any more.
+     */
+    private static final class SessionExpiredException extends IOException {
+        private SessionExpiredException(String message) {
+            super(message);
+        }
+    }
+
     @Extension(ordinal = Short.MIN_VALUE)
     public static class BuilderImpl extends SCMFileSystem.Builder {
         @Override
@@ -106,11 +407,10 @@ public class AccurevSCMFileSystem extends SCMFileSystem {
                return null;
            }
            AccurevSCMSource accurevSCMSource = (AccurevSCMSource) source;
-           Accurev accurev = new Accurev();
-           accurev.setUrl(accurevSCMSource.getRemote());
-           AccurevClient accurevClient = accurev.getClient();
+           AccurevClient accurevClient = Accurev.with(TaskListener.NULL, new EnvVars(), launcher())
+                   .on(accurevSCMSource.getRemote()).getClient();
            accurevClient.setCredentials(accurevSCMSource.getCredentials());
-           return new AccurevSCMFileSystem(accurevClient, accurevSCMSource.getRemote(), head.getName(), (AccurevSCMSource.SCMRevisionImpl) rev);
+           return shared(new AccurevSCMFileSystem(accurevClient, accurevSCMSource.getRemote(), head.getName(), (AccurevSCMSource.SCMRevisionImpl) rev));
         }
 
         @Override
@@ -121,8 +421,7 @@ public class AccurevSCMFileSystem extends SCMFileSystem {
             ServerRemoteConfig config = accurevSCM.getServerRemoteConfigs().get(0);
             StreamSpec streamSpec = accurevSCM.getStreams().get(0);
             String remote = config.getUrl();
-            Accurev accurev = new Accurev();
-            AccurevClient accurevClient = accurev.on(remote).getClient();
+            AccurevClient accurevClient = Accurev.with(TaskListener.NULL, new EnvVars(), launcher()).on(remote).getClient();
             String credentialsId = config.getCredentialsId();
             if (credentialsId != null) {
                 StandardUsernamePasswordCredentials credentials = CredentialsMatchers.firstOrNull(
@@ -146,7 +445,7 @@ public class AccurevSCMFileSystem extends SCMFileSystem {
                 headName = streamSpec.getName();
             }
 
-            return new AccurevSCMFileSystem(accurevClient, remote, headName, (AccurevSCMSource.SCMRevisionImpl) rev);
+            return shared(new AccurevSCMFileSystem(accurevClient, remote, headName, (AccurevSCMSource.SCMRevisionImpl) rev));
         }
     }
 }
@@ -12,8 +12,11 @@ import hudson.*;
 import hudson.model.*;
 import hudson.model.Queue;
 import hudson.model.queue.Tasks;
+import hudson.plugins.accurev.AccurevAdmissionController;
 import hudson.plugins.accurev.AccurevCommitPayload;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
 import hudson.plugins.accurev.AccurevRepositoryBrowser;
+import hudson.plugins.accurev.AccurevTracer;
 import hudson.plugins.accurev.AccurevSCM;
 import hudson.plugins.accurev.AccurevSCMRevision;
 import hudson.scm.RepositoryBrowser;
@@ -124,6 +127,20 @@ public class AccurevSCMSource extends SCMSource {
                             SCMHeadEvent<?> scmHeadEvent,
                             @NonNull TaskListener taskListener)
                             throws IOException, InterruptedException {
+        AccurevAdmissionController.Lane priority = scmHeadEvent != null
+                ? AccurevAdmissionController.Lane.EVENT : AccurevAdmissionController.Lane.INDEXING;
+        try (AccurevTracer.Span span = AccurevTracer.span("indexing");
+             AccurevAdmissionController.Scope lane = AccurevAdmissionController.enter(priority)) {
+            span.attr("remote", remote).attr("depot", depot).attr("event", scmHeadEvent != null);
+            doRetrieve(scmSourceCriteria, scmHeadObserver, scmHeadEvent, taskListener);
+        }
+    }
+
+    private void doRetrieve(SCMSourceCriteria scmSourceCriteria,
+                            @NonNull SCMHeadObserver scmHeadObserver,
+                            SCMHeadEvent<?> scmHeadEvent,
+                            @NonNull TaskListener taskListener)
+                            throws IOException, InterruptedException {
         this.listener = taskListener;
         taskListener.getLogger().println(new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Calendar.getInstance().getTime()) + " Retrieving from Accurev");
 
@@ -136,7 +153,7 @@ public class AccurevSCMSource extends SCMSource {
         } else {
             launcher = new Launcher.LocalLauncher(taskListener);
         }
-        Accurev accurev = Accurev.with(taskListener, new EnvVars(), launcher).at(Jenkins.getInstanceOrNull().root).on(remote);
+        Accurev accurev = Accurev.with(taskListener, new EnvVars(), AccurevLauncherDecorator.decorateAll(launcher)).at(Jenkins.getInstanceOrNull().root).on(remote);
 
         accurevClient = accurev.getClient();
         accurevClient.login().username(getCredentials().getUsername()).password(getCredentials().getPassword()).execute();
@@ -165,53 +182,59 @@ public class AccurevSCMSource extends SCMSource {
             } else {
                 streams = accurevClient.fetchChildStreams(depot, context.getTopStream(), wantedTypes);
             }
+            AccurevTracer.annotate("streams", streams.size());
 
+            AccurevCommitPayload payload = scmHeadEvent != null ? (AccurevCommitPayload) scmHeadEvent.getPayload() : null;
             for (AccurevStream stream : streams) {
+                // Events only concern their stream, skip the others before tracing them
+                if (payload != null && !stream.getName().equals(payload.getStream())) {
+                    continue;
+                }
+                try (AccurevTracer.Span streamSpan = AccurevTracer.span("stream")) {
+                    streamSpan.attr("stream", stream.getName()).attr("type", stream.getType());
+
+                    long highest = 0;
+
+                    if (payload != null){
+                        if (payload.getTransaction().equals("" + 1)){
+                            highest = accurevClient.fetchTransaction(payload.getStream()).getId();
+                        } else{
+                            highest = Long.parseLong(payload.getTransaction());
+                        }
 
-                long highest = 0;
 
-                if (scmHeadEvent != null){
-                    AccurevCommitPayload payload = (AccurevCommitPayload) scmHeadEvent.getPayload();
-                    if(!stream.getName().equals(payload.getStream())){
-                        continue;
                     }
-                    if (payload.getTransaction().equals("" + 1)){
-                        highest = accurevClient.fetchTransaction(payload.getStream()).getId();
-                    } else{
-                        highest = Long.parseLong(payload.getTransaction());
+                    else {
+                        highest = accurevClient.fetchTransaction(stream.getName()).getId();
                     }
 
+                    if (stream.getType().equals(AccurevStreamType.Staging) && accurevClient.getActiveElements(stream.getName()).getFiles().size() == 0) {
 
-                }
-                else if(scmHeadEvent == null ){
-                    highest = accurevClient.fetchTransaction(stream.getName()).getId();
-                }
-
-                if (stream.getType().equals(AccurevStreamType.Staging) && accurevClient.getActiveElements(stream.getName()).getFiles().size() == 0) {
+                        continue;
+                    }
 
-                    continue;
+                    streamSpan.attr("transaction", highest);
+                    System.out.println("working on transaction: " + highest + " for stream " + stream.getName());
+                    SCMHead head = new SCMHead(stream.getName());
+                    SCMRevisionImpl revision = new SCMRevisionImpl(head, highest);
+                    AccurevSCMHead accurevHead = new AccurevSCMHead(revision.getHead().getName());
+                    accurevHead.setHash(highest);
+                    if (scmSourceCriteria == null || request.process(
+                            accurevHead,
+                            (SCMSourceRequest.RevisionLambda) (AccurevSCMHead) -> new AccurevSCMRevision(accurevHead, revision.getHash()),
+                            (aHead, aRevision) -> new StreamSCMProbe(head.getName(), revision.getHash(), accurevClient),
+                            (SCMSourceRequest.Witness) (head1, revision1, isMatch) -> {
+                                if (isMatch) {
+                                    taskListener.getLogger().println("    Met criteria");
+                                    System.out.println("Met criteria for: " + head.getName() + " with hash: " + revision.getHash());
+                                } else {
+                                    taskListener.getLogger().println("    Does not meet criteria");
+                                    System.out.println("    Does not meet criteria for: " + head.getName() + " with hash: " + revision.getHash());
+
+                                }
+                            })
+                    ) ;
                 }
-
-                System.out.println("working on transaction: " + highest + " for stream " + stream.getName());
-                SCMHead head = new SCMHead(stream.getName());
-                SCMRevisionImpl revision = new SCMRevisionImpl(head, highest);
-                AccurevSCMHead accurevHead = new AccurevSCMHead(revision.getHead().getName());
-                accurevHead.setHash(highest);
-                if (scmSourceCriteria == null || request.process(
-                        accurevHead,
-                        (SCMSourceRequest.RevisionLambda) (AccurevSCMHead) -> new AccurevSCMRevision(accurevHead, revision.getHash()),
-                        (aHead, aRevision) -> new StreamSCMProbe(head.getName(), revision.getHash(), accurevClient),
-                        (SCMSourceRequest.Witness) (head1, revision1, isMatch) -> {
-                            if (isMatch) {
-                                taskListener.getLogger().println("    Met criteria");
-                                System.out.println("Met criteria for: " + head.getName() + " with hash: " + revision.getHash());
-                            } else {
-                                taskListener.getLogger().println("    Does not meet criteria");
-                                System.out.println("    Does not meet criteria for: " + head.getName() + " with hash: " + revision.getHash());
-
-                            }
-                        })
-                ) ;
             }
 
             taskListener.getLogger().println(new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss").format(Calendar.getInstance().getTime()) + " filtering is done");
@@ -244,7 +267,7 @@ public class AccurevSCMSource extends SCMSource {
                 launcher = new Launcher.LocalLauncher(taskListener);
             }
 
-            Accurev accurev = Accurev.with(taskListener, new EnvVars(), launcher).at(Jenkins.getInstanceOrNull().root).on(remote);
+            Accurev accurev = Accurev.with(taskListener, new EnvVars(), AccurevLauncherDecorator.decorateAll(launcher)).at(Jenkins.getInstanceOrNull().root).on(remote);
             accurevClient = accurev.getClient();
             accurevClient.login().username(getCredentials().getUsername()).password(getCredentials().getPassword()).execute();
             AccurevStreams streams;
@@ -482,7 +505,7 @@ public class AccurevSCMSource extends SCMSource {
 
 
         AccurevClient getAccurevClient(String url) {
-            AccurevClient client = Accurev.with((TaskListener) () -> null, new EnvVars(), new Launcher.LocalLauncher(null)).on(url).getClient();
+            AccurevClient client = Accurev.with((TaskListener) () -> null, new EnvVars(), AccurevLauncherDecorator.decorateAll(new Launcher.LocalLauncher(null))).on(url).getClient();
             return client;
         }
 
@@ -578,6 +601,13 @@ public class AccurevSCMSource extends SCMSource {
         @NonNull
         @Override
         public SCMProbeStat stat(@NonNull String path) throws IOException {
+            try (AccurevTracer.Span span = AccurevTracer.span("probe")) {
+                span.attr("stream", name).attr("transaction", transactionId).attr("path", path);
+                return doStat(path);
+            }
+        }
+
+        private SCMProbeStat doStat(String path) throws IOException {
             try {
                 if(accurevClient.getInfo().getLoggedOut()){
                     accurevClient.login().username(getCredentials().getUsername()).password(getCredentials().getPassword()).execute();
@@ -0,0 +1,64 @@
+package jenkins.plugins.accurev.traits;
+
+import hudson.Extension;
+import hudson.plugins.accurev.extensions.impl.BuildDeduplication;
+import hudson.util.ListBoxModel;
+import jenkins.plugins.accurev.AccurevSCMBuilder;
+import jenkins.plugins.accurev.AccurevSCMSource;
+import jenkins.plugins.accurev.AccurevSCMSourceContext;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.trait.SCMBuilder;
+import jenkins.scm.api.trait.SCMSourceContext;
+import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+public class BuildDeduplicationTrait extends AccurevSCMExtensionTrait<BuildDeduplication> {
+
+    @DataBoundConstructor
+    public BuildDeduplicationTrait(BuildDeduplication.Mode mode) {
+        super(new BuildDeduplication());
+        getExtension().setMode(mode);
+    }
+
+    public BuildDeduplication.Mode getMode() {
+        return getExtension().getMode();
+    }
+
+    @Symbol("accurevBuildDeduplicationTrait")
+    @Extension
+    public static class DescriptorImpl extends SCMSourceTraitDescriptor {
+        @Override
+        public Class<? extends SCMBuilder> getBuilderClass() {
+            return AccurevSCMBuilder.class;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<? extends SCMSourceContext> getContextClass() {
+            return AccurevSCMSourceContext.class;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Class<? extends SCMSource> getSourceClass() {
+            return AccurevSCMSource.class;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Skip builds of content already built in the stream hierarchy";
+        }
+
+        public ListBoxModel doFillModeItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Skip the build", BuildDeduplication.Mode.SKIP.name());
+            items.add("Build, and expose the earlier build as ACCUREV_CONTENT_BUILT_BY", BuildDeduplication.Mode.REUSE.name());
+            return items;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import jenkins.scm.api.trait.SCMSourceTraitDescriptor;
 import jenkins.scm.impl.trait.Discovery;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 public class TriggerChildrenTrait extends AccurevSCMExtensionTrait<TriggerChildren> {
 
@@ -28,6 +29,24 @@ public class TriggerChildrenTrait extends AccurevSCMExtensionTrait<TriggerChildr
         return getExtension().getDepth();
     }
 
+    @DataBoundSetter
+    public void setQuietPeriod(int quietPeriod) {
+        getExtension().setQuietPeriod(quietPeriod);
+    }
+
+    public int getQuietPeriod() {
+        return getExtension().getQuietPeriod();
+    }
+
+    @DataBoundSetter
+    public void setMaxInFlight(int maxInFlight) {
+        getExtension().setMaxInFlight(maxInFlight);
+    }
+
+    public int getMaxInFlight() {
+        return getExtension().getMaxInFlight();
+    }
+
     @Symbol("accurevTriggerChildrenTrait")
     @Extension
     @Discovery
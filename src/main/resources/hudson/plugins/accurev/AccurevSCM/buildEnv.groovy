@@ -2,7 +2,7 @@ package hudson.plugins.accurev.AccurevSCM
 
 def l = namespace(lib.JenkinsTagLib)
 
-['ACCUREV_TRANSACTION', 'ACCUREV_STREAM','ACCUREV_SERVER','ACCUREV_PORT'].each {name ->
+['ACCUREV_TRANSACTION', 'ACCUREV_STREAM','ACCUREV_SERVER','ACCUREV_PORT','ACCUREV_CONTENT_BUILT_BY'].each {name ->
     l.buildEnvVar(name: name) {
         raw(_("${name}.blurb"))
     }
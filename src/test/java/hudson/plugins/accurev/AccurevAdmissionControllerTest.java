@@ -0,0 +1,115 @@
+package hudson.plugins.accurev;
+
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevAdmissionController.Lane;
+import hudson.plugins.accurev.AccurevAdmissionController.Limiter;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevAdmissionControllerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testHigherLanesAreAdmittedFirst() throws Exception {
+        Limiter limiter = new Limiter();
+        for (int i = 0; i < limiter.getLimit(); i++) {
+            limiter.acquire(Lane.CHECKOUT);
+        }
+        List<Lane> admitted = new CopyOnWriteArrayList<>();
+        Thread indexing = waiter(limiter, Lane.INDEXING, admitted);
+        awaitWaiting(limiter, Lane.INDEXING);
+        Thread polling = waiter(limiter, Lane.POLLING, admitted);
+        awaitWaiting(limiter, Lane.POLLING);
+        Thread checkout = waiter(limiter, Lane.CHECKOUT, admitted);
+        awaitWaiting(limiter, Lane.CHECKOUT);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.release("info", System.nanoTime(), MILLIS, false);
+            while (admitted.size() <= i) {
+                Thread.sleep(10);
+            }
+        }
+        indexing.join();
+        polling.join();
+        checkout.join();
+        assertEquals(Arrays.asList(Lane.CHECKOUT, Lane.POLLING, Lane.INDEXING), admitted);
+    }
+
+    @Test
+    public void testLimitShrinksOnSlowdownAndGrowsBack() throws Exception {
+        Limiter limiter = new Limiter();
+        int max = limiter.getLimit();
+        limiter.acquire(Lane.POLLING);
+        limiter.release("hist", System.nanoTime(), 100 * MILLIS, false);
+        assertEquals(max, limiter.getLimit());
+
+        limiter.acquire(Lane.POLLING);
+        limiter.release("hist", System.nanoTime(), 1000 * MILLIS, false);
+        int shrunk = limiter.getLimit();
+        assertTrue("limit " + shrunk + " should be below " + max, shrunk < max);
+
+        // Slow commands started before the decrease do not shrink the limit again
+        limiter.acquire(Lane.POLLING);
+        limiter.release("hist", System.nanoTime() - 2000 * MILLIS, 1000 * MILLIS, false);
+        assertEquals(shrunk, limiter.getLimit());
+
+        for (int round = 0; round < 100 && limiter.getLimit() < max; round++) {
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire(Lane.POLLING);
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.release("hist", System.nanoTime(), 100 * MILLIS, false);
+            }
+        }
+        assertEquals(max, limiter.getLimit());
+        assertEquals(0, limiter.getRunning());
+    }
+
+    @Test
+    public void testReleasesAfterCommand() throws Exception {
+        FakeAccurevServer server = new FakeAccurevServer().depot("depot");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "hello"));
+        AccurevAdmissionController controller = new AccurevAdmissionController();
+        Launcher launcher = controller.decorate(server.decorate(new Launcher.LocalLauncher(TaskListener.NULL)));
+
+        try (AccurevAdmissionController.Scope lane = AccurevAdmissionController.enter(Lane.POLLING)) {
+            assertEquals(Lane.POLLING, AccurevAdmissionController.getLane());
+            assertEquals(0, launcher.launch().cmds("accurev", "cat", "-H", "host:5050", "-v", "depot", "-t", "1", "/./README")
+                    .stdout(new ByteArrayOutputStream()).join());
+        }
+        assertEquals(Lane.CHECKOUT, AccurevAdmissionController.getLane());
+        assertEquals(0, controller.getLimiter("host:5050").getRunning());
+    }
+
+    private static Thread waiter(Limiter limiter, Lane lane, List<Lane> admitted) {
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(lane);
+                admitted.add(lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(Limiter limiter, Lane lane) throws InterruptedException {
+        while (limiter.getWaiting(lane) == 0) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package hudson.plugins.accurev;
+
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevCommandDeadlines.Category;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccurevCommandDeadlinesTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Category.QUERY.getProperty());
+    }
+
+    @Test
+    public void testCategories() {
+        assertEquals(Category.SESSION, Category.of("login"));
+        assertEquals(Category.CONTENT, Category.of("cat"));
+        assertEquals(Category.POPULATE, Category.of("pop"));
+        assertEquals(Category.QUERY, Category.of("show streams"));
+        assertEquals(Category.QUERY, Category.of("hist"));
+        assertEquals(3600, Category.POPULATE.getSeconds());
+    }
+
+    @Test
+    public void testHungCommandIsKilled() throws Exception {
+        System.setProperty(Category.QUERY.getProperty(), "1");
+        HangingProc hanging = new HangingProc();
+        Launcher launcher = new AccurevCommandDeadlines().decorate(launching(hanging));
+
+        long start = System.nanoTime();
+        try {
+            launcher.launch().cmds("accurev", "hist", "-H", "host:5050", "-s", "stream").join();
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("accurev hist on host:5050 did not finish within 1 seconds"));
+            assertThat(e.getMessage(), containsString(Category.QUERY.getProperty()));
+        }
+        assertEquals(0, hanging.killed.getCount());
+        assertTrue(System.nanoTime() - start < 30000000000L);
+    }
+
+    @Test
+    public void testFastCommandIsNotKilled() throws Exception {
+        System.setProperty(Category.QUERY.getProperty(), "1");
+        HangingProc proc = new HangingProc();
+        proc.killed.countDown();
+        Launcher launcher = new AccurevCommandDeadlines().decorate(launching(proc));
+        assertEquals(0, launcher.launch().cmds("accurev", "hist", "-s", "stream").join());
+        Thread.sleep(1500);
+        assertEquals(0, proc.kills);
+    }
+
+    private static Launcher launching(Proc proc) {
+        return new Launcher.DecoratedLauncher(new Launcher.LocalLauncher(TaskListener.NULL)) {
+            @Override
+            public Proc launch(ProcStarter starter) {
+                return proc;
+            }
+        };
+    }
+
+    /**
+     * Blocks in {@link #join()} until killed.
+     */
+    private static final class HangingProc extends Proc {
+        private final CountDownLatch killed = new CountDownLatch(1);
+        private volatile int kills;
+
+        @Override
+        public boolean isAlive() {
+            return killed.getCount() > 0;
+        }
+
+        @Override
+        public void kill() {
+            kills++;
+            killed.countDown();
+        }
+
+        @Override
+        public int join() throws InterruptedException {
+            killed.await();
+            return kills > 0 ? 143 : 0;
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return new ByteArrayOutputStream();
+        }
+    }
+}
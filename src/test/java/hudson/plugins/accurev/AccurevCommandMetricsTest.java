@@ -0,0 +1,60 @@
+package hudson.plugins.accurev;
+
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevCommandMetricsTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void testCommandNames() {
+        assertEquals("hist", AccurevLauncherDecorator.command(Arrays.asList("accurev", "hist", "-p", "depot", "-fx")));
+        assertEquals("show streams", AccurevLauncherDecorator.command(Arrays.asList("accurev", "show", "-p", "depot", "-fx", "streams")));
+        assertEquals("cat", AccurevLauncherDecorator.command(Arrays.asList("accurev", "-H", "host:5050", "cat", "-v", "s", "/./f")));
+        assertEquals("host:5050", AccurevLauncherDecorator.server(Arrays.asList("accurev", "cat", "-H", "HOST:5050", "/./f")));
+        assertEquals("default", AccurevLauncherDecorator.server(Arrays.asList("accurev", "login", "user")));
+    }
+
+    @Test
+    public void testRecordsLatencyErrorsAndOutputSize() throws Exception {
+        FakeAccurevServer server = new FakeAccurevServer().depot("depot");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "0123456789"));
+        server.setLatency("cat", 30);
+        AccurevCommandMetrics metrics = AccurevCommandMetrics.get();
+        Launcher launcher = metrics.decorate(server.decorate(new Launcher.LocalLauncher(TaskListener.NULL)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, launcher.launch().cmds("accurev", "cat", "-H", "host:5050", "-v", "depot", "-t", "1", "/./README")
+                .stdout(out).join());
+        assertEquals(1, launcher.launch().cmds("accurev", "cat", "-H", "host:5050", "-v", "depot", "-t", "1", "/./missing")
+                .stdout(new ByteArrayOutputStream()).join());
+
+        AccurevCommandMetrics.Stats stats = metrics.getStats().get("cat|host:5050");
+        assertEquals(2, stats.getCount());
+        assertEquals(1, stats.getErrors());
+        assertEquals(10, stats.getBytes());
+        assertTrue(stats.getTotalNanos() >= 60000000L);
+
+        StringWriter text = new StringWriter();
+        metrics.write(new PrintWriter(text));
+        assertThat(text.toString(), containsString("accurev_command_duration_seconds_count{command=\"cat\",server=\"host:5050\"} 2"));
+        assertThat(text.toString(), containsString("accurev_command_errors_total{command=\"cat\",server=\"host:5050\"} 1"));
+    }
+}
@@ -0,0 +1,50 @@
+package hudson.plugins.accurev;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.WithoutJenkins;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevEventJournalTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @WithoutJenkins
+    @Test
+    public void testEscape() {
+        String value = "a\tb\\c\nd";
+        assertEquals("a\\tb\\\\c\\nd", AccurevEventJournal.escape(value));
+        assertEquals(value, AccurevEventJournal.unescape(AccurevEventJournal.escape(value)));
+        assertEquals("", AccurevEventJournal.escape(null));
+    }
+
+    @Test
+    public void testPendingEventsSurviveReload() throws Exception {
+        AccurevEventJournal journal = new AccurevEventJournal();
+        AccurevEventJournal.Event first = journal.append(Reason.UPDATED,
+                new AccurevCommitPayload(new URI("host:5050"), "depot", "stream1", "4"), "origin");
+        AccurevEventJournal.Event second = journal.append(Reason.CREATED,
+                new AccurevCommitPayload(new URI("host:5050"), null, "stream2", "1"), null);
+        journal.consume(first.getId());
+
+        List<AccurevEventJournal.Event> pending = new AccurevEventJournal().getPending();
+        assertEquals(1, pending.size());
+        AccurevEventJournal.Event event = pending.get(0);
+        assertEquals(second.getId(), event.getId());
+        assertEquals(Reason.CREATED, event.getReason());
+        assertEquals(second.getPayload(), event.getPayload());
+        assertNull(event.getOrigin());
+
+        AccurevEventJournal reloaded = new AccurevEventJournal();
+        assertTrue(reloaded.append(Reason.UPDATED,
+                new AccurevCommitPayload(new URI("host:5050"), "depot", "stream1", "5"), null).getId() > second.getId());
+    }
+}
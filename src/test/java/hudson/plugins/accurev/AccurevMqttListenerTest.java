@@ -0,0 +1,119 @@
+package hudson.plugins.accurev;
+
+import hudson.ExtensionList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.LoggerRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import javax.annotation.CheckForNull;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevMqttListenerTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Rule
+    public LoggerRule logging = new LoggerRule().record(AccurevMqttListener.class, Level.WARNING).capture(100);
+
+    @Test
+    public void testHandle() throws Exception {
+        AccurevMqttListener listener = AccurevMqttListener.get();
+        String message = "{\"host\": \"host\", \"port\": \"5050\", \"stream\": \"stream1\", \"transaction\": \"4\"}";
+
+        assertEquals("Message is not a JSON object", listener.handle("stream1", "test"));
+        assertEquals("No host or port given", listener.handle("{\"stream\": \"stream1\"}", "test"));
+        assertEquals("No transaction given", listener.handle(
+                "{\"host\": \"host\", \"port\": \"5050\", \"stream\": \"stream1\"}", "test"));
+        assertNull(listener.handle(message, "test"));
+        // Redelivered messages are not dispatched again
+        assertNull(listener.handle(message, "test"));
+        assertEquals(Arrays.asList("updated stream1@4"), Recorder.get().notifications);
+    }
+
+    @Test
+    public void testRepeatsAreHandledAgain() throws Exception {
+        AccurevMqttListener listener = AccurevMqttListener.get();
+        String created = "{\"host\": \"host\", \"port\": \"5050\", \"stream\": \"stream2\", \"reason\": \"created\"}";
+        String deleted = "{\"host\": \"host\", \"port\": \"5050\", \"stream\": \"stream2\", \"reason\": \"deleted\"}";
+        String updated = "{\"host\": \"host\", \"port\": \"5050\", \"stream\": \"stream2\", \"transaction\": \"7\"}";
+        assertNull(listener.handle(created, "test"));
+        assertNull(listener.handle(deleted, "test"));
+        assertNull(listener.handle(created, "test"));
+        assertNull(listener.handle(updated, "test"));
+        long window = AccurevMqttListener.DEDUP_MILLIS;
+        AccurevMqttListener.DEDUP_MILLIS = 0;
+        try {
+            // Re-sent after the window, e.g. to trigger a build that was missed
+            assertNull(listener.handle(updated, "test"));
+        } finally {
+            AccurevMqttListener.DEDUP_MILLIS = window;
+        }
+        // Deletes are not passed to the listeners, only to the SCM sources
+        assertEquals(Arrays.asList("created stream2@1", "created stream2@1", "updated stream2@7", "updated stream2@7"),
+                Recorder.get().notifications);
+    }
+
+    @TestExtension
+    public static class Recorder extends AccurevStatus.Listener {
+        private final List<String> notifications = new CopyOnWriteArrayList<>();
+
+        static Recorder get() {
+            return ExtensionList.lookupSingleton(Recorder.class);
+        }
+
+        @Override
+        public List<AccurevStatus.ResponseContributor> onNotifyCommit(String origin, URI uri, @CheckForNull String depot,
+                                                        String transaction, String... streams) {
+            for (String stream : streams) {
+                notifications.add(("1".equals(transaction) ? "created " : "updated ") + stream + "@" + transaction);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testGlobalConfiguration() throws Exception {
+        AccurevSCM.DescriptorImpl descriptor = jenkins.jenkins.getDescriptorByType(AccurevSCM.DescriptorImpl.class);
+        assertEquals(AccurevSCM.DescriptorImpl.DEFAULT_MQTT_TOPIC, descriptor.getMqttTopic());
+        descriptor.setMqttSharedGroup("jenkins");
+        jenkins.configRoundtrip();
+        assertEquals("jenkins", descriptor.getMqttSharedGroup());
+        assertNull(descriptor.getMqttBroker());
+    }
+
+    @Test
+    public void testFailedFirstConnectIsRetried() throws Exception {
+        long retry = AccurevMqttListener.MIN_RETRY_MILLIS;
+        AccurevMqttListener.MIN_RETRY_MILLIS = 50;
+        AccurevMqttListener listener = AccurevMqttListener.get();
+        try {
+            // Nothing listens on port 1
+            jenkins.jenkins.getDescriptorByType(AccurevSCM.DescriptorImpl.class).setMqttBroker("tcp://localhost:1");
+            listener.restart();
+            long deadline = System.currentTimeMillis() + 30000;
+            while (retries() < 2) {
+                assertTrue("The connect was not retried", System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+        } finally {
+            listener.stop();
+            AccurevMqttListener.MIN_RETRY_MILLIS = retry;
+        }
+    }
+
+    private long retries() {
+        return logging.getRecords().stream().filter(r -> r.getMessage().contains("retrying in")).count();
+    }
+}
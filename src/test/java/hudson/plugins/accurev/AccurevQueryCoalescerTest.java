@@ -0,0 +1,123 @@
+package hudson.plugins.accurev;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class AccurevQueryCoalescerTest {
+
+    @After
+    public void tearDown() {
+        AccurevQueryCoalescer.invalidateAll();
+    }
+
+    @Test
+    public void testConcurrentIdenticalQueriesShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> AccurevQueryCoalescer.query("server|creds", "fetchStream", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new Object();
+                }, "depot", "stream")));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            Object first = results.get(0).get();
+            for (Future<Object> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, calls.get());
+            // A late arrival within the TTL gets the same result
+            assertSame(first, AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "stream"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueriesAreKeyedByScopeAndArguments() {
+        Object a = AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "a");
+        Object b = AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "b");
+        Object other = AccurevQueryCoalescer.query("server|other", "fetchStream", Object::new, "depot", "a");
+        assertNotSameAll(a, b, other);
+
+        AccurevQueryCoalescer.invalidateAll();
+        assertNotSameAll(a, AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "a"));
+    }
+
+    @Test
+    public void testQueriesAfterInvalidationDoNotJoinQueriesInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Object stale = new Object();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> inFlight = pool.submit(() -> AccurevQueryCoalescer.query("server|creds", "fetchStream", () -> {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return stale;
+            }, "depot", "stream"));
+            started.await(10, TimeUnit.SECONDS);
+
+            AccurevQueryCoalescer.invalidateAll();
+            Object fresh = AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "stream");
+            release.countDown();
+            assertSame(stale, inFlight.get());
+            assertNotSameAll(stale, fresh);
+            // The stale result completed last but is not handed out
+            assertSame(fresh, AccurevQueryCoalescer.query("server|creds", "fetchStream", Object::new, "depot", "stream"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailuresAndNullsAreNotCachedAsErrors() {
+        try {
+            AccurevQueryCoalescer.query("server|creds", "fetchTransaction", () -> {
+                throw new IllegalArgumentException("no such stream");
+            }, "missing");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("no such stream", e.getMessage());
+        }
+        assertEquals("found", AccurevQueryCoalescer.query("server|creds", "fetchTransaction", () -> "found", "missing"));
+        assertNull(AccurevQueryCoalescer.query("server|creds", "fetchStream", () -> null, "depot", "gone"));
+    }
+
+    private static void assertNotSameAll(Object... objects) {
+        for (int i = 0; i < objects.length; i++) {
+            for (int j = i + 1; j < objects.length; j++) {
+                if (objects[i] == objects[j]) {
+                    fail("Results " + i + " and " + j + " should differ");
+                }
+            }
+        }
+    }
+}
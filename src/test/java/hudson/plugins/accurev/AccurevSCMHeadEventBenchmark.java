@@ -0,0 +1,80 @@
+package hudson.plugins.accurev;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.ExtensionList;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.branch.BranchProperty;
+import jenkins.branch.BranchSource;
+import jenkins.branch.DefaultBranchPropertyStrategy;
+import jenkins.branch.NoTriggerBranchProperty;
+import jenkins.plugins.accurev.AccurevSCMSource;
+import jenkins.plugins.accurev.traits.BuildItemsDiscoveryTrait;
+import jenkins.scm.api.SCMEvent;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches an update event against the sources of 1000 multibranch projects on 10 servers, as done for every event.
+ * <p>
+ * The projects are registered in the {@link AccurevStreamIndex} like real ones, and the 100 projects on the server of
+ * the event are indexed against a {@link FakeAccurevServer}, so they have a branch job for the stream of the event.
+ */
+@JmhBenchmark
+public class AccurevSCMHeadEventBenchmark {
+
+    private static final int SOURCES = 1000;
+    private static final int STREAMS = 10;
+
+    public static class State extends JmhBenchmarkState {
+        private final List<AccurevSCMSource> sources = new ArrayList<>();
+        private AccurevCommitPayload payload;
+
+        @Override
+        public void setup() throws Exception {
+            FakeAccurevServer server = new FakeAccurevServer().depot("depot");
+            for (int i = 0; i < STREAMS; i++) {
+                server.stream("stream" + i, "depot", "normal");
+            }
+            server.promote("depot", "benchmark", "pipeline", Collections.singletonMap("Jenkinsfile", "node {}"));
+            ExtensionList.lookup(AccurevLauncherDecorator.class).add(server);
+            SystemCredentialsProvider.getInstance().getCredentials().add(
+                    new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "accurev", "Accurev", "user", "password"));
+            for (int i = 0; i < SOURCES; i++) {
+                WorkflowMultiBranchProject project = getJenkins().createProject(WorkflowMultiBranchProject.class, "project" + i);
+                AccurevSCMSource source = new AccurevSCMSource("source", "accurev" + (i % 10), "5050", "depot", "accurev");
+                source.setTraits(Collections.singletonList(new BuildItemsDiscoveryTrait(true, false, false, false, false, false)));
+                project.getSourcesList().add(new BranchSource(source,
+                        new DefaultBranchPropertyStrategy(new BranchProperty[]{new NoTriggerBranchProperty()})));
+                sources.add(source);
+                if (i % 10 == 3) {
+                    project.scheduleBuild2(0).getFuture().get();
+                    if (project.getItem("stream7") == null) {
+                        throw new IllegalStateException("Indexing of " + project.getFullName() + " found no stream7");
+                    }
+                }
+            }
+            payload = new AccurevCommitPayload(new URI("accurev3:5050"), "depot", "stream7", "100");
+        }
+    }
+
+    @Benchmark
+    public void heads(State state, Blackhole blackhole) {
+        // Events remember the sources matching them, a new one is created for every event received
+        AccurevSCMHeadEvent<?> event = new AccurevSCMHeadEvent<>(SCMEvent.Type.UPDATED, state.payload, "benchmark");
+        for (AccurevSCMSource source : state.sources) {
+            if (event.isMatch(source)) {
+                blackhole.consume(event.heads(source));
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import hudson.EnvVars;
 import hudson.Launcher;
 import hudson.model.*;
 import hudson.plugins.accurev.util.AccurevTestExtensions;
+import hudson.plugins.accurev.util.CommandBudget;
 import hudson.util.Secret;
 import hudson.util.StreamTaskListener;
 import jenkins.plugins.accurevclient.Accurev;
@@ -42,6 +43,9 @@ public class AccurevSCMTest {
             .file("src/docker/docker-compose.yml")
             .build();
 
+    @Rule
+    public CommandBudget budget = new CommandBudget();
+
     protected TaskListener listener = StreamTaskListener.fromStderr();
 
     private AccurevClient client;
@@ -146,6 +150,23 @@ public class AccurevSCMTest {
         assertFalse("scm polling should not detect any more changes after build", project.poll(listener).hasChanges());
     }
 
+    @Test
+    public void testPollingCommandBudget() throws Exception {
+        FreeStyleProject project = setupProject();
+
+        File file = AccurevTestExtensions.createFile(project.getBuildDir().getPath(), "budgetFile", "test");
+        List<String> files = new ArrayList<>();
+        files.add(file.getAbsolutePath());
+        client.add().add(files).comment("test").execute();
+        client.promote().files(files).comment("test").execute();
+        rule.assertBuildStatus(Result.SUCCESS, project.scheduleBuild2(0).get());
+
+        budget.start();
+        assertFalse(project.poll(listener).hasChanges());
+        budget.assertAtMost("login", 1);
+        budget.assertAtMost(3);
+    }
+
     private FreeStyleProject setupProject() throws Exception {
         FreeStyleProject project = rule.createFreeStyleProject();
         client = AccurevTestExtensions.createClientAtDir(project.getBuildDir(), url, username, password);
@@ -0,0 +1,192 @@
+package hudson.plugins.accurev;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.ExtensionList;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.plugins.accurev.util.BuildData;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import hudson.plugins.accurev.util.SyntheticDepot;
+import hudson.util.StreamTaskListener;
+import jenkins.branch.BranchProperty;
+import jenkins.branch.BranchSource;
+import jenkins.branch.DefaultBranchPropertyStrategy;
+import jenkins.branch.NoTriggerBranchProperty;
+import jenkins.plugins.accurev.AccurevSCMSource;
+import jenkins.plugins.accurev.traits.BuildItemsDiscoveryTrait;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.output.NullOutputStream;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * End to end scalability scenarios against a {@link SyntheticDepot}, run with {@code -Daccurev.scalability=true}.
+ * <p>
+ * The size of the depot is set with {@code accurev.scalability.streams}, {@code .depth} and {@code .transactions}.
+ * Every scenario writes its wall time, CLI calls per command and heap high-water mark to
+ * {@code target/scalability/<scenario>.json}.
+ */
+public class AccurevScalabilityTest {
+
+    private static SyntheticDepot depot;
+    private static FakeAccurevServer server;
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @BeforeClass
+    public static void generate() {
+        assumeTrue("Scalability scenarios only run with -Daccurev.scalability=true", Boolean.getBoolean("accurev.scalability"));
+        depot = new SyntheticDepot(
+                Integer.getInteger("accurev.scalability.streams", 5000),
+                Integer.getInteger("accurev.scalability.depth", 10),
+                Integer.getInteger("accurev.scalability.transactions", 1000000),
+                42);
+        server = depot.generate();
+    }
+
+    @Before
+    public void setUp() {
+        ExtensionList.lookup(AccurevLauncherDecorator.class).add(server);
+        SystemCredentialsProvider.getInstance().getCredentials().add(
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "accurev", "Accurev", "user", "password"));
+    }
+
+    @Test
+    public void indexing() throws Exception {
+        WorkflowMultiBranchProject project = j.createProject(WorkflowMultiBranchProject.class, "mb");
+        project.getSourcesList().add(branchSource());
+        Scenario scenario = new Scenario("indexing");
+        project.scheduleBuild2(0).getFuture().get();
+        j.waitUntilNoActivity();
+        scenario.report();
+    }
+
+    @Test
+    public void webhookBurst() throws Exception {
+        WorkflowMultiBranchProject project = j.createProject(WorkflowMultiBranchProject.class, "mb");
+        project.getSourcesList().add(branchSource());
+        // Events only reach branch jobs which indexing created
+        project.scheduleBuild2(0).getFuture().get();
+        j.waitUntilNoActivity();
+        int events = Integer.getInteger("accurev.scalability.events", 1000);
+        Random random = new Random(42);
+        URI uri = new URI("localhost:5050");
+        Scenario scenario = new Scenario("webhookBurst");
+        for (int i = 0; i < events; i++) {
+            String stream = SyntheticDepot.streamName(random.nextInt(depot.getStreams()));
+            AccurevStatus.fireEvent(uri, SyntheticDepot.DEPOT, stream, Long.toString(server.getLastTransaction()),
+                    Reason.UPDATED, "scalability", new ArrayList<>());
+        }
+        // Head events are handled on the event threads, the journal has them consumed once every listener saw them
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30);
+        while (!AccurevEventJournal.get().getPending().isEmpty()) {
+            assertTrue("Events were not handled in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        j.waitUntilNoActivity();
+        scenario.report();
+    }
+
+    @Test
+    public void polling() throws Exception {
+        int projects = Integer.getInteger("accurev.scalability.projects", 100);
+        Random random = new Random(42);
+        StreamTaskListener listener = new StreamTaskListener(new NullOutputStream());
+        FreeStyleProject[] jobs = new FreeStyleProject[projects];
+        for (int i = 0; i < projects; i++) {
+            jobs[i] = j.createFreeStyleProject("p" + i);
+            jobs[i].setScm(new AccurevSCM(AccurevSCM.createDepotList("localhost", "5050", "accurev"),
+                    Collections.singletonList(new StreamSpec(SyntheticDepot.streamName(random.nextInt(depot.getStreams())),
+                            SyntheticDepot.DEPOT)), null, null));
+            // Without a build, polling asks for one without looking at the stream
+            FreeStyleBuild build = jobs[i].scheduleBuild2(0).get();
+            assertNotNull("The first build of " + jobs[i].getFullName() + " did not record what it built",
+                    build.getAction(BuildData.class));
+        }
+        Scenario scenario = new Scenario("polling");
+        for (FreeStyleProject job : jobs) {
+            job.poll(listener);
+        }
+        scenario.report();
+    }
+
+    /**
+     * @return a source discovering all streams of the depot, whose branch jobs are not built automatically, so the
+     * scenarios only measure indexing and event handling.
+     */
+    private static BranchSource branchSource() {
+        AccurevSCMSource source = new AccurevSCMSource("source", "localhost", "5050", SyntheticDepot.DEPOT, "accurev");
+        source.setTraits(Collections.singletonList(new BuildItemsDiscoveryTrait(true, false, false, false, false, false)));
+        return new BranchSource(source, new DefaultBranchPropertyStrategy(new BranchProperty[]{new NoTriggerBranchProperty()}));
+    }
+
+    /**
+     * Measures a scenario from its creation to {@link #report()}.
+     */
+    private static final class Scenario {
+        private final String name;
+        private final long start;
+        private final Map<String, Integer> calls;
+
+        private Scenario(String name) {
+            this.name = name;
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            calls = server.getInvocations();
+            start = System.nanoTime();
+        }
+
+        private void report() throws Exception {
+            long wall = (System.nanoTime() - start) / 1000000;
+            long heap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heap += pool.getPeakUsage().getUsed();
+                }
+            }
+            JSONObject cli = new JSONObject();
+            for (Map.Entry<String, Integer> e : server.getInvocations().entrySet()) {
+                Integer before = calls.get(e.getKey());
+                cli.put(e.getKey(), e.getValue() - (before == null ? 0 : before));
+            }
+            JSONObject json = new JSONObject();
+            json.put("scenario", name);
+            json.put("streams", depot.getStreams());
+            json.put("depth", depot.getDepth());
+            json.put("transactions", depot.getTransactions());
+            json.put("wallMillis", wall);
+            json.put("cliCalls", cli);
+            json.put("heapHighWaterBytes", heap);
+            File dir = new File("target/scalability");
+            Files.createDirectories(dir.toPath());
+            Files.write(new File(dir, name + ".json").toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+            System.out.println(json);
+        }
+    }
+}
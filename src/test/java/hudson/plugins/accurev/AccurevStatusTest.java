@@ -7,19 +7,28 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.WithoutJenkins;
+import net.sf.json.JSONArray;
 import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.mockito.Mockito;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class AccurevStatusTest {
 
@@ -107,6 +116,82 @@ public class AccurevStatusTest {
     }
 
 
+    @Test
+    public void testDoNotifyCommitSchedulesBuildOnNotify() throws Exception {
+        AccurevTrigger trigger = new AccurevTrigger();
+        trigger.setBuildOnNotify(true);
+        FreeStyleProject project = setupProject("host", "8080", "stream1", "depot", trigger);
+        jenkins.jenkins.setQuietPeriod(60);
+
+        HttpResponse httpResponse = this.accurevStatus.doNotifyCommit(requestWithNoParameters, "host", "8080", "stream1", "4", "testPrincipal", "Updated");
+
+        StringWriter body = new StringWriter();
+        StaplerResponse response = mock(StaplerResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+        httpResponse.generateResponse(null, response, null);
+        assertTrue(project.isInQueue());
+        assertTrue(body.toString().contains("Scheduled " + project.getFullDisplayName()));
+    }
+
+    @Test
+    public void testDoNotifyCommitsWithBatch() throws Exception {
+        setupProjectWithTrigger("host", "8080", "stream1,stream2", "depot", false);
+
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader(
+                "[{\"stream\": \"stream1\", \"transaction\": \"4\", \"reason\": \"updated\"},"
+                        + "{\"stream\": \"stream2\", \"reason\": \"created\"},"
+                        + "{\"stream\": \"stream3\", \"reason\": \"updated\"}]")));
+        HttpResponse httpResponse = this.accurevStatus.doNotifyCommits(request, "host", "8080");
+
+        StringWriter body = new StringWriter();
+        StaplerResponse response = mock(StaplerResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+        httpResponse.generateResponse(request, response, null);
+        JSONArray statuses = JSONArray.fromObject(body.toString());
+
+        assertEquals(3, statuses.size());
+        assertEquals("accepted", statuses.getJSONObject(0).getString("status"));
+        assertEquals("accepted", statuses.getJSONObject(1).getString("status"));
+        assertEquals("rejected", statuses.getJSONObject(2).getString("status"));
+        assertEquals("HOST: host PORT: 8080 Streams: stream1,stream2", this.accurevStatus.toString());
+    }
+
+    @Test
+    public void testDoNotifyCommitsRejectsInvalidTransactions() throws Exception {
+        setupProjectWithTrigger("host", "8080", "stream1", "depot", false);
+
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader(
+                "[{\"stream\": \"stream1\", \"transaction\": \"abc\", \"reason\": \"updated\"},"
+                        + "{\"stream\": \"stream1\", \"transaction\": \"-3\", \"reason\": \"updated\"}]")));
+        HttpResponse httpResponse = this.accurevStatus.doNotifyCommits(request, "host", "8080");
+
+        StringWriter body = new StringWriter();
+        StaplerResponse response = mock(StaplerResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+        httpResponse.generateResponse(request, response, null);
+        JSONArray statuses = JSONArray.fromObject(body.toString());
+
+        assertEquals(2, statuses.size());
+        assertEquals("rejected", statuses.getJSONObject(0).getString("status"));
+        assertEquals("Transaction abc is not a positive number", statuses.getJSONObject(0).getString("message"));
+        assertEquals("rejected", statuses.getJSONObject(1).getString("status"));
+        assertTrue(AccurevEventJournal.get().getPending().isEmpty());
+    }
+
+    @Test
+    public void testDoNotifyCommitsWithInvalidBody() throws Exception {
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("stream1")));
+        HttpResponse httpResponse = this.accurevStatus.doNotifyCommits(request, "host", "8080");
+
+        StaplerResponse response = mock(StaplerResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        httpResponse.generateResponse(request, response, null);
+        Mockito.verify(response).setStatus(400);
+    }
+
     private AccurevTrigger setupProjectWithTrigger(String host, String port, String streamString, String depotString, boolean ignoreNotifyCommit) throws Exception {
         AccurevTrigger trigger = Mockito.mock(AccurevTrigger.class);
         //Mockito.doReturn(ignoreNotifyCommit);
@@ -114,7 +199,7 @@ public class AccurevStatusTest {
         return trigger;
     }
 
-    private void setupProject(String host, String port, String streamString, String depotString, AccurevTrigger trigger) throws Exception {
+    private FreeStyleProject setupProject(String host, String port, String streamString, String depotString, AccurevTrigger trigger) throws Exception {
         FreeStyleProject project = jenkins.createFreeStyleProject();
         List<StreamSpec> streams = new ArrayList<>();
         for (String stream : streamString.split(",")) {
@@ -129,7 +214,7 @@ public class AccurevStatusTest {
         );
         project.setScm(accurev);
         if (trigger != null) project.addTrigger(trigger);
-
+        return project;
     }
 
 }
@@ -0,0 +1,93 @@
+package hudson.plugins.accurev;
+
+import hudson.model.FreeStyleProject;
+import jenkins.branch.BranchSource;
+import jenkins.plugins.accurev.AccurevSCMSource;
+import jenkins.scm.api.SCMEvent;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.WithoutJenkins;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevStreamIndexTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @WithoutJenkins
+    @Test
+    public void testServerKey() {
+        assertThat(AccurevStreamIndex.serverKey(" Host:5050 "), is("host:5050"));
+        assertThat(AccurevStreamIndex.serverKey(null), is(""));
+    }
+
+    @Test
+    public void testJobsAreIndexedByStream() throws Exception {
+        FreeStyleProject a = createProject("a", "stream1", "stream2");
+        FreeStyleProject b = createProject("b", "stream2");
+        AccurevStreamIndex index = AccurevStreamIndex.get();
+
+        assertThat(index.getJobs("HOST:5050", "depot", "stream1"), contains("a"));
+        assertThat(index.getJobs("host:5050", null, "stream2"), containsInAnyOrder("a", "b"));
+        assertThat(index.getJobs("host:5050", "otherDepot", "stream2"), is(empty()));
+        assertThat(index.getJobs("otherhost:5050", null, "stream2"), is(empty()));
+
+        b.renameTo("c");
+        assertThat(index.getJobs("host:5050", null, "stream2"), containsInAnyOrder("a", "c"));
+
+        a.delete();
+        assertThat(index.getJobs("host:5050", null, "stream1"), is(empty()));
+        assertThat(index.getJobs("host:5050", null, "stream2"), contains("c"));
+    }
+
+    @Test
+    public void testSourcesAreIndexedByServerAndDepot() throws Exception {
+        WorkflowMultiBranchProject project = jenkins.createProject(WorkflowMultiBranchProject.class, "mb");
+        AccurevSCMSource source = new AccurevSCMSource("source", "host", "5050", "depot", null);
+        source.setOwner(project);
+        project.getSourcesList().add(new BranchSource(source));
+        AccurevStreamIndex index = AccurevStreamIndex.get();
+
+        assertThat(index.getSources("host:5050", "depot"), contains("mb#source"));
+        assertThat(index.getSources("host:5050", null), contains("mb#source"));
+        assertThat(index.getSources("host:5050", "otherDepot"), is(empty()));
+
+        assertTrue(new AccurevSCMHeadEvent<String>(SCMEvent.Type.UPDATED,
+                new AccurevCommitPayload(new URI("host:5050"), "depot", "stream", "2"), "origin").isMatch(source));
+        assertFalse(new AccurevSCMHeadEvent<String>(SCMEvent.Type.UPDATED,
+                new AccurevCommitPayload(new URI("otherhost:5050"), "depot", "stream", "2"), "origin").isMatch(source));
+        assertFalse(new AccurevSCMHeadEvent<String>(SCMEvent.Type.UPDATED,
+                new AccurevCommitPayload(new URI("host:5050"), "otherDepot", "stream", "2"), "origin").isMatch(source));
+
+        project.delete();
+        assertThat(index.getSources("host:5050", null), is(empty()));
+    }
+
+    private FreeStyleProject createProject(String name, String... streams) throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject(name);
+        StreamSpec[] specs = new StreamSpec[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            specs[i] = new StreamSpec(streams[i], "depot");
+        }
+        project.setScm(new AccurevSCM(
+                Collections.singletonList(new ServerRemoteConfig("host", "5050", null)),
+                Arrays.asList(specs),
+                null,
+                null
+        ));
+        return project;
+    }
+}
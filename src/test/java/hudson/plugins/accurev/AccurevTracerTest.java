@@ -0,0 +1,85 @@
+package hudson.plugins.accurev;
+
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevTracerTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void enable() {
+        AccurevTracer.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        AccurevTracer.ENABLED = false;
+    }
+
+    @Test
+    public void testNestedSpansAndCommands() throws Exception {
+        FakeAccurevServer server = new FakeAccurevServer().depot("depot");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "hello"));
+        Launcher launcher = new AccurevTracer().decorate(server.decorate(new Launcher.LocalLauncher(TaskListener.NULL)));
+
+        try (AccurevTracer.Span indexing = AccurevTracer.span("indexing")) {
+            indexing.attr("depot", "depot");
+            try (AccurevTracer.Span stream = AccurevTracer.span("stream")) {
+                stream.attr("stream", "depot");
+                AccurevTracer.annotate("transaction", 1L);
+                assertEquals(0, launcher.launch().cmds("accurev", "cat", "-H", "host:5050", "-v", "depot", "-t", "1", "/./README")
+                        .stdout(new ByteArrayOutputStream()).join());
+            }
+        }
+
+        JSONArray events = read();
+        assertEquals(3, events.size());
+        JSONObject command = events.getJSONObject(0);
+        JSONObject stream = events.getJSONObject(1);
+        JSONObject indexing = events.getJSONObject(2);
+        assertEquals("accurev cat", command.getString("name"));
+        assertEquals("host:5050", command.getJSONObject("args").getString("server"));
+        assertEquals(0, command.getJSONObject("args").getInt("exitCode"));
+        assertEquals("stream", stream.getString("name"));
+        assertEquals(1L, stream.getJSONObject("args").getLong("transaction"));
+        assertEquals("indexing", indexing.getString("name"));
+        assertFalse(indexing.getJSONObject("args").has("parent"));
+        assertEquals(indexing.getJSONObject("args").getLong("id"), stream.getJSONObject("args").getLong("parent"));
+        assertEquals(stream.getJSONObject("args").getLong("id"), command.getJSONObject("args").getLong("parent"));
+    }
+
+    @Test
+    public void testDisabledWritesNothing() throws Exception {
+        AccurevTracer.ENABLED = false;
+        try (AccurevTracer.Span span = AccurevTracer.span("indexing")) {
+            span.attr("depot", "depot");
+        }
+        assertFalse(AccurevTracer.getFile().exists());
+    }
+
+    private static JSONArray read() throws Exception {
+        String trace = new String(Files.readAllBytes(AccurevTracer.getFile().toPath()), StandardCharsets.UTF_8).trim();
+        assertTrue(trace.startsWith("["));
+        // The trailing comma is allowed by the trace viewers, not by a JSON parser
+        return JSONArray.fromObject(trace.substring(0, trace.length() - 1) + "]");
+    }
+}
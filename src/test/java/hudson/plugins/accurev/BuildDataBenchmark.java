@@ -0,0 +1,87 @@
+package hudson.plugins.accurev;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.plugins.accurev.util.Build;
+import hudson.plugins.accurev.util.BuildData;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.plugins.accurevclient.model.AccurevStream;
+import jenkins.plugins.accurevclient.model.AccurevStreamType;
+import jenkins.plugins.accurevclient.model.AccurevTransaction;
+import jenkins.plugins.accurevclient.model.TransactionType;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Looks up the build data of a stream over a history of 5000 builds, of which only the oldest built the stream, and
+ * clones build data.
+ * <p>
+ * The history is made of real builds of a project, only linked to their previous build directly instead of through
+ * the build records on disk, so the lookup goes through the actions of every build like in a running controller.
+ */
+@JmhBenchmark
+public class BuildDataBenchmark {
+
+    private static final int HISTORY = 5000;
+
+    public static class State extends JmhBenchmarkState {
+        private AccurevSCM scm;
+        private FreeStyleBuild last;
+        private BuildData buildData;
+
+        @Override
+        public void setup() throws Exception {
+            scm = new AccurevSCM(Collections.emptyList(), Collections.singletonList(new StreamSpec("stream", "depot")),
+                    Collections.emptyList(), null);
+            AccurevTransaction transaction = new AccurevTransaction(2, "", TransactionType.Promote, new Date(), "", null, "stream");
+            AccurevStream stream = new AccurevStream("stream", "depot", 1L, "", null, false, AccurevStreamType.Normal, new Date(), null);
+            buildData = new BuildData("Accurev");
+            for (int i = 0; i < 100; i++) {
+                buildData.addRemoteStream("stream" + i);
+            }
+            buildData.saveBuild(new Build(transaction, stream, 1, Result.SUCCESS));
+            FreeStyleProject project = getJenkins().createProject(FreeStyleProject.class, "history");
+            FreeStyleBuild previous = null;
+            for (int i = 1; i <= HISTORY; i++) {
+                FreeStyleBuild run = new LinkedBuild(project, previous);
+                BuildData other = new BuildData("Accurev");
+                other.addRemoteStream("other");
+                run.addAction(i == 1 ? buildData : other);
+                previous = run;
+            }
+            last = previous;
+        }
+    }
+
+    /**
+     * A build that knows its previous build without loading it from the build records.
+     */
+    private static final class LinkedBuild extends FreeStyleBuild {
+        private final FreeStyleBuild previous;
+
+        private LinkedBuild(FreeStyleProject project, FreeStyleBuild previous) throws IOException {
+            super(project);
+            this.previous = previous;
+        }
+
+        @Override
+        public FreeStyleBuild getPreviousBuild() {
+            return previous;
+        }
+    }
+
+    @Benchmark
+    public BuildData getBuildData(State state) {
+        return state.scm.getBuildData(state.last);
+    }
+
+    @Benchmark
+    public BuildData cloneBuildData(State state) {
+        return state.buildData.clone();
+    }
+}
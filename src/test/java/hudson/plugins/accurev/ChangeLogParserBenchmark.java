@@ -0,0 +1,57 @@
+package hudson.plugins.accurev;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Parses a changelog of 10k transactions with 5 files each.
+ */
+@JmhBenchmark
+@State(Scope.Benchmark)
+public class ChangeLogParserBenchmark {
+
+    private static final int TRANSACTIONS = 10000;
+
+    private File changelog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        changelog = File.createTempFile("changelog", ".txt");
+        try (Writer out = Files.newBufferedWriter(changelog.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                out.write("transaction: " + (100000 + i) + "\n");
+                out.write("stream: dev_stream_" + (i % 20) + "\n");
+                out.write("    Comment of transaction " + i + "    \n");
+                out.write("Type: promote\n");
+                out.write("User: user" + (i % 50) + "\n");
+                for (int f = 0; f < 5; f++) {
+                    out.write("File: /./src/module" + (i % 100) + "/File" + f + ".java\n");
+                }
+                out.write("Time: 2019-07-15 14:11:03.000+0200\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!changelog.delete()) {
+            changelog.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public AccurevChangeSetList parse() throws IOException {
+        return new AccurevChangeLogParser().parse(null, null, changelog);
+    }
+}
@@ -0,0 +1,51 @@
+package hudson.plugins.accurev;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.labels.LabelAtom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChildStreamSchedulerTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void testChildrenAreReleasedParentFirstWithinLimit() throws Exception {
+        FreeStyleBuild upstream = jenkins.buildAndAssertSuccess(jenkins.createFreeStyleProject("parent"));
+        FreeStyleProject child = jenkins.createFreeStyleProject("child");
+        FreeStyleProject grandChild = jenkins.createFreeStyleProject("grandChild");
+        // Keep the builds in the queue, so they count as in flight
+        child.setAssignedLabel(new LabelAtom("missing"));
+        grandChild.setAssignedLabel(new LabelAtom("missing"));
+
+        Map<Job<?, ?>, Integer> children = new LinkedHashMap<>();
+        children.put(grandChild, 2);
+        children.put(child, 1);
+        ChildStreamScheduler scheduler = ChildStreamScheduler.get();
+        scheduler.submit(upstream, children, 0, 1);
+        // A second trigger of the same streams collapses into the pending builds
+        scheduler.submit(upstream, children, 0, 1);
+        scheduler.tick();
+
+        assertTrue(child.isInQueue());
+        assertFalse(grandChild.isInQueue());
+        assertThat(scheduler.getPending(), contains("grandChild"));
+
+        jenkins.jenkins.getQueue().cancel(child);
+        scheduler.tick();
+        assertTrue(grandChild.isInQueue());
+        jenkins.jenkins.getQueue().cancel(grandChild);
+    }
+}
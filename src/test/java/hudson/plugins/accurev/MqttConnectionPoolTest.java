@@ -0,0 +1,38 @@
+package hudson.plugins.accurev;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MqttConnectionPoolTest {
+
+    @Test
+    public void testClientIdsAreUniqueAndShort() {
+        String a = MqttConnectionPool.newClientId();
+        String b = MqttConnectionPool.newClientId();
+        assertNotEquals(a, b);
+        // MQTT 3.1 brokers reject client ids longer than 23 characters
+        assertTrue(a.length() <= 23);
+    }
+
+    @Test
+    public void testGetClientDoesNotWaitForTheBroker() throws Exception {
+        MqttConnectionPool pool = new MqttConnectionPool();
+        try {
+            long start = System.nanoTime();
+            // Not routable, a blocking connect would hang until the connect timeout
+            MqttAsyncClient client = pool.getClient("tcp://10.255.255.1:1883");
+            assertSame(client, pool.getClient("tcp://10.255.255.1:1883"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertFalse(client.isConnected());
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package hudson.plugins.accurev;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.LoggerRule;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MqttOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public LoggerRule logging = new LoggerRule().record(MqttOutbox.class, Level.WARNING).capture(10);
+
+    @Test
+    public void testMessagesAreKeptUntilDelivered() throws Exception {
+        File dir = folder.newFolder("outbox");
+        MqttOutbox outbox = new MqttOutbox() {
+            @Override
+            protected File getDirectory() {
+                return dir;
+            }
+
+            @Override
+            protected MqttAsyncClient getClient(String broker) throws MqttException {
+                // No broker is reachable
+                return new MqttAsyncClient(broker, MqttConnectionPool.newClientId(), new MemoryPersistence());
+            }
+        };
+        MqttMessage message = new MqttMessage("result".getBytes("UTF-8"));
+        message.setQos(2);
+        outbox.enqueue("tcp://localhost:1", "gatedStream/stream/4", message);
+        outbox.enqueue("tcp://localhost:1", "gatedStream/stream/5", message);
+        outbox.drain();
+
+        // Both messages have to stay in the outbox
+        assertEquals(2, outbox.size());
+    }
+
+    @Test
+    public void testDeliveredMessageIsRemovedAndInFlightMessageIsNotResent() throws Exception {
+        File dir = folder.newFolder("outbox");
+        MqttAsyncClient client = mock(MqttAsyncClient.class);
+        MqttOutbox outbox = new MqttOutbox() {
+            @Override
+            protected File getDirectory() {
+                return dir;
+            }
+
+            @Override
+            protected MqttAsyncClient getClient(String broker) {
+                return client;
+            }
+        };
+        MqttMessage message = new MqttMessage("result".getBytes("UTF-8"));
+        message.setQos(1);
+        outbox.enqueue("tcp://broker:1883", "gatedStream/stream/4", message);
+
+        ArgumentCaptor<MqttMessage> sent = ArgumentCaptor.forClass(MqttMessage.class);
+        ArgumentCaptor<IMqttActionListener> callback = ArgumentCaptor.forClass(IMqttActionListener.class);
+        verify(client, timeout(5000)).publish(eq("gatedStream/stream/4"), sent.capture(), isNull(), callback.capture());
+        assertArrayEquals(message.getPayload(), sent.getValue().getPayload());
+        assertEquals(1, sent.getValue().getQos());
+
+        // Not acknowledged yet, draining again must not send it a second time
+        outbox.drain();
+        outbox.drain();
+        verify(client, times(1)).publish(anyString(), any(MqttMessage.class), any(), any(IMqttActionListener.class));
+        assertEquals(1, outbox.size());
+
+        callback.getValue().onSuccess(null);
+        assertEquals(0, outbox.size());
+        outbox.drain();
+        verify(client, times(1)).publish(anyString(), any(MqttMessage.class), any(), any(IMqttActionListener.class));
+    }
+
+    @Test
+    public void testFailedDeliveryIsRetried() throws Exception {
+        File dir = folder.newFolder("outbox");
+        MqttAsyncClient client = mock(MqttAsyncClient.class);
+        MqttOutbox outbox = new MqttOutbox() {
+            @Override
+            protected File getDirectory() {
+                return dir;
+            }
+
+            @Override
+            protected MqttAsyncClient getClient(String broker) {
+                return client;
+            }
+        };
+        outbox.enqueue("tcp://broker:1883", "gatedStream/stream/4", new MqttMessage("result".getBytes("UTF-8")));
+
+        ArgumentCaptor<IMqttActionListener> callback = ArgumentCaptor.forClass(IMqttActionListener.class);
+        verify(client, timeout(5000)).publish(anyString(), any(MqttMessage.class), any(), callback.capture());
+        callback.getValue().onFailure(null, new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+        outbox.drain();
+        verify(client, timeout(5000).times(2)).publish(anyString(), any(MqttMessage.class), any(), any(IMqttActionListener.class));
+        assertEquals(1, outbox.size());
+    }
+
+    @Test
+    public void testMessageDeliveredWhileListedIsSkippedQuietly() throws Exception {
+        File dir = folder.newFolder("outbox");
+        assertNull(MqttOutbox.read(new File(dir, "delivered.msg")));
+        assertTrue(logging.getRecords().isEmpty());
+    }
+
+    @Test
+    public void testCorruptMessageIsDiscarded() throws Exception {
+        File file = folder.newFile("corrupt.msg");
+        Files.write(file.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+        assertNull(MqttOutbox.read(file));
+        assertFalse(file.exists());
+        assertEquals(1, logging.getRecords().size());
+    }
+}
@@ -0,0 +1,107 @@
+package hudson.plugins.accurev.extensions.impl;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.ContentFingerprintRegistry;
+import hudson.plugins.accurev.util.ContentFingerprint;
+import hudson.plugins.accurev.util.ContentFingerprintAction;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BuildDeduplicationTest {
+
+    /**
+     * The parent and child jobs stand for the branch jobs of one multibranch project.
+     */
+    private static final String FAMILY = "project";
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    private FakeAccurevServer server;
+    private Launcher launcher;
+    private FreeStyleBuild parentBuild;
+    private FreeStyleBuild childBuild;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeAccurevServer().depot("depot").stream("dev", "depot", "normal");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "v1"));
+        launcher = server.decorate(new Launcher.LocalLauncher(TaskListener.NULL));
+        parentBuild = r.buildAndAssertSuccess(r.createFreeStyleProject("depot"));
+        FreeStyleProject child = r.createFreeStyleProject("dev");
+        childBuild = r.buildAndAssertSuccess(child);
+        ContentFingerprintRegistry.get().record(FAMILY, fingerprint("depot"), parentBuild);
+    }
+
+    private String fingerprint(String stream) throws Exception {
+        return ContentFingerprint.compute(launcher, null, new EnvVars(), "localhost:5050", stream, server.getLastTransaction());
+    }
+
+    @Test
+    public void testSkipsContentBuiltByTheParent() throws Exception {
+        BuildDeduplication deduplication = new BuildDeduplication();
+        try {
+            deduplication.deduplicate(childBuild, FAMILY, fingerprint("dev"), TaskListener.NULL);
+            fail("the child has the content of the parent");
+        } catch (AbortException e) {
+            assertThat(e.getMessage(), containsString(parentBuild.getFullDisplayName()));
+        }
+        assertEquals(parentBuild.getExternalizableId(), childBuild.getAction(ContentFingerprintAction.class).getBuiltBy());
+    }
+
+    @Test
+    public void testReusesContentBuiltByTheParent() throws Exception {
+        BuildDeduplication deduplication = new BuildDeduplication();
+        deduplication.setMode(BuildDeduplication.Mode.REUSE);
+        deduplication.deduplicate(childBuild, FAMILY, fingerprint("dev"), TaskListener.NULL);
+        assertEquals(parentBuild.getExternalizableId(), childBuild.getAction(ContentFingerprintAction.class).getBuiltBy());
+    }
+
+    @Test
+    public void testBuildsOwnChanges() throws Exception {
+        server.promote("dev", "bob", "work", Collections.singletonMap("src/Foo.java", "class Foo {}"));
+        new BuildDeduplication().deduplicate(childBuild, FAMILY, fingerprint("dev"), TaskListener.NULL);
+        assertNull(childBuild.getAction(ContentFingerprintAction.class).getBuiltBy());
+    }
+
+    @Test
+    public void testIgnoresContentBuiltByUnrelatedJobs() throws Exception {
+        // Standalone jobs are families of their own
+        ContentFingerprintRegistry.get().record(ContentFingerprintRegistry.scope(parentBuild.getParent()),
+                fingerprint("depot"), parentBuild);
+        String scope = ContentFingerprintRegistry.scope(childBuild.getParent());
+        assertEquals("dev", scope);
+        new BuildDeduplication().deduplicate(childBuild, scope, fingerprint("dev"), TaskListener.NULL);
+        assertNull(childBuild.getAction(ContentFingerprintAction.class).getBuiltBy());
+    }
+
+    @Test
+    public void testBranchJobsOfAMultibranchProjectAreOneFamily() {
+        WorkflowMultiBranchProject project = mock(WorkflowMultiBranchProject.class);
+        when(project.getFullName()).thenReturn("folder/project");
+        Job<?, ?> job = mock(Job.class);
+        doReturn(project).when(job).getParent();
+        assertEquals("folder/project", ContentFingerprintRegistry.scope(job));
+    }
+}
@@ -0,0 +1,51 @@
+package hudson.plugins.accurev.extensions.impl;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks a transaction of 50k paths against 500 included and 500 excluded regions.
+ */
+@JmhBenchmark
+@State(Scope.Benchmark)
+public class PathRestrictionBenchmark {
+
+    private static final int REGIONS = 500;
+    private static final int PATHS = 50000;
+
+    private PathRestriction restriction;
+    private List<String> paths;
+    private TaskListener listener;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder included = new StringBuilder();
+        StringBuilder excluded = new StringBuilder();
+        for (int i = 0; i < REGIONS; i++) {
+            included.append("/\\./src/module").append(i).append("/.*\n");
+            excluded.append("/\\./src/module").append(i).append("/generated/.*\\.java\n");
+        }
+        restriction = new PathRestriction(included.toString(), excluded.toString());
+        paths = new ArrayList<>(PATHS);
+        for (int i = 0; i < PATHS; i++) {
+            int module = i % (2 * REGIONS);
+            paths.add("/./src/module" + module + (i % 3 == 0 ? "/generated/" : "/main/") + "File" + i + ".java");
+        }
+        listener = new StreamTaskListener(new NullOutputStream());
+    }
+
+    @Benchmark
+    public boolean isExcluded() {
+        return restriction.isExcluded("42", paths, listener);
+    }
+}
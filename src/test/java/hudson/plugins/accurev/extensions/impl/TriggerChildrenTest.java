@@ -0,0 +1,50 @@
+package hudson.plugins.accurev.extensions.impl;
+
+import hudson.model.FreeStyleProject;
+import hudson.plugins.accurev.AccurevSCM;
+import hudson.plugins.accurev.StreamSpec;
+import hudson.plugins.accurev.extensions.AccurevSCMExtension;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.recipes.LocalData;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TriggerChildrenTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    @LocalData
+    public void testOldConfigurationGetsDefaults() {
+        FreeStyleProject project = j.jenkins.getItemByFullName("old", FreeStyleProject.class);
+        assertNotNull(project);
+        TriggerChildren trigger = ((AccurevSCM) project.getScm()).getExtensions().get(TriggerChildren.class);
+        assertNotNull(trigger);
+        assertEquals(2, trigger.getDepth());
+        assertEquals(TriggerChildren.DEFAULT_QUIET_PERIOD, trigger.getQuietPeriod());
+        // No limit, as before the setting existed
+        assertEquals(0, trigger.getMaxInFlight());
+    }
+
+    @Test
+    public void testExplicitZeroQuietPeriodIsKept() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("p");
+        TriggerChildren trigger = new TriggerChildren(1);
+        trigger.setQuietPeriod(0);
+        project.setScm(new AccurevSCM(AccurevSCM.createDepotList("localhost", "5050", "accurev"),
+                Collections.singletonList(new StreamSpec("stream", "depot")),
+                Collections.<AccurevSCMExtension>singletonList(trigger), null));
+        project.save();
+
+        FreeStyleProject reloaded = (FreeStyleProject) j.jenkins.getItemByFullName("p");
+        reloaded.doReload();
+        TriggerChildren loaded = ((AccurevSCM) reloaded.getScm()).getExtensions().get(TriggerChildren.class);
+        assertEquals(0, loaded.getQuietPeriod());
+    }
+}
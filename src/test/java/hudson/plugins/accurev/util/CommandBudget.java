@@ -0,0 +1,116 @@
+package hudson.plugins.accurev.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records the {@code accurev} commands run by the plugin during a scenario, so tests can assert upper bounds on them.
+ * <p>
+ * Use it next to a {@code JenkinsRule}: call {@link #start()} once Jenkins is up and right before the scenario, then
+ * assert the budget with {@link #assertAtMost(int)} or {@link #assertAtMost(String, int)}. Masked arguments, such as
+ * passwords, are not recorded.
+ */
+public class CommandBudget extends AccurevLauncherDecorator implements TestRule {
+
+    private final List<List<String>> commands = Collections.synchronizedList(new ArrayList<>());
+    private boolean installed;
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                // Every test gets a new Jenkins, so a new extension list to install into
+                installed = false;
+                commands.clear();
+                base.evaluate();
+            }
+        };
+    }
+
+    /**
+     * Starts recording, forgetting the commands recorded so far.
+     */
+    public void start() {
+        if (!installed) {
+            ExtensionList.lookup(AccurevLauncherDecorator.class).add(this);
+            installed = true;
+        }
+        commands.clear();
+    }
+
+    /**
+     * @return the recorded commands, each without the executable.
+     */
+    @NonNull
+    public List<List<String>> getCommands() {
+        synchronized (commands) {
+            return new ArrayList<>(commands);
+        }
+    }
+
+    /**
+     * @param command the command, e.g. {@code login}.
+     * @return how often the command was run.
+     */
+    public int count(@NonNull String command) {
+        int count = 0;
+        for (List<String> c : getCommands()) {
+            if (!c.isEmpty() && c.get(0).equals(command)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Asserts that at most {@code max} commands were run since {@link #start()}.
+     */
+    public void assertAtMost(int max) {
+        List<List<String>> recorded = getCommands();
+        assertTrue("Expected at most " + max + " accurev commands but got " + recorded.size() + ": " + recorded,
+                recorded.size() <= max);
+    }
+
+    /**
+     * Asserts that a command was run at most {@code max} times since {@link #start()}.
+     */
+    public void assertAtMost(@NonNull String command, int max) {
+        int count = count(command);
+        assertTrue("Expected at most " + max + " accurev " + command + " commands but got " + count + ": " + getCommands(),
+                count <= max);
+    }
+
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (isAccurev(cmds)) {
+                    boolean[] masks = starter.masks();
+                    List<String> command = new ArrayList<>();
+                    for (int i = 1; i < cmds.size(); i++) {
+                        command.add(masks != null && i < masks.length && masks[i] ? "****" : cmds.get(i));
+                    }
+                    commands.add(command);
+                }
+                return super.launch(starter);
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package hudson.plugins.accurev.util;
+
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ContentFingerprintTest {
+
+    private FakeAccurevServer server;
+    private Launcher launcher;
+
+    @Before
+    public void setUp() {
+        server = new FakeAccurevServer().depot("depot").stream("dev", "depot", "normal");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "v1"));
+        launcher = server.decorate(new Launcher.LocalLauncher(TaskListener.NULL));
+    }
+
+    private String compute(String stream, long transaction) throws Exception {
+        return ContentFingerprint.compute(launcher, null, new EnvVars(), "localhost:5050", stream, transaction);
+    }
+
+    @Test
+    public void testDigestDependsOnLayerOrder() {
+        String a = ContentFingerprint.digest(Arrays.asList("root depot/depot@10", "default [11]"));
+        assertEquals(a, ContentFingerprint.digest(Arrays.asList("root depot/depot@10", "default [11]")));
+        assertNotEquals(a, ContentFingerprint.digest(Arrays.asList("default [11]", "root depot/depot@10")));
+        assertEquals(64, a.length());
+    }
+
+    @Test
+    public void testInheritingChildHasTheFingerprintOfItsParent() throws Exception {
+        long transaction = server.getLastTransaction();
+        String parent = compute("depot", transaction);
+        assertNotNull(parent);
+        assertEquals(parent, compute("dev", transaction));
+    }
+
+    @Test
+    public void testOwnChangesOfAChildChangeItsFingerprint() throws Exception {
+        long transaction = server.promote("dev", "bob", "work", Collections.singletonMap("src/Foo.java", "class Foo {}"));
+        assertNotEquals(compute("depot", transaction), compute("dev", transaction));
+    }
+
+    @Test
+    public void testNewerTransactionsOfAnyStreamAreIgnored() throws Exception {
+        long transaction = server.getLastTransaction();
+        String before = compute("dev", transaction);
+        server.promote("depot", "alice", "update", Collections.singletonMap("README", "v2"));
+        server.promote("dev", "bob", "work", Collections.singletonMap("src/Foo.java", "class Foo {}"));
+        assertEquals(before, compute("dev", transaction));
+        assertNotEquals(before, compute("dev", server.getLastTransaction()));
+    }
+
+    @Test
+    public void testElementsWithoutRealVersionCannotBeIdentified() throws Exception {
+        String xml = "<AcResponse Command=\"stat\">\n"
+                + "  <element location=\"/./README\" dir=\"no\" status=\"(backed)\" Real=\"1/1\"/>\n"
+                + "  <element location=\"/./gone\" dir=\"no\" status=\"(defunct)\"/>\n"
+                + "</AcResponse>";
+        assertEquals(Collections.singletonList("/./README 1/1"),
+                ContentFingerprint.versions(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        String unversioned = "<AcResponse Command=\"stat\">\n"
+                + "  <element location=\"/./README\" dir=\"no\" status=\"(backed)\"/>\n"
+                + "</AcResponse>";
+        assertNull(ContentFingerprint.versions(new ByteArrayInputStream(unversioned.getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,595 @@
+package hudson.plugins.accurev.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory Accurev server standing in for the {@code accurev} CLI, for benchmarks and load tests without a
+ * licensed server.
+ * <p>
+ * The depot is modelled as streams with a basis, and transactions promoting file contents to a stream. Every
+ * {@code accurev} command started through a decorated launcher is answered from the model with the XML the real CLI
+ * prints, after the latency configured for the command. Supported commands are {@code login}, {@code logout},
+ * {@code info}, {@code show streams}, {@code show depots}, {@code hist}, {@code stat}, {@code cat}, {@code pop} and
+ * {@code update}, which leaves the workspace as it is, everything else fails like an unknown command.
+ * <p>
+ * Install it with {@code ExtensionList.lookup(AccurevLauncherDecorator.class).add(server)}, or decorate a launcher
+ * directly with {@link #decorate(Launcher)}.
+ */
+public class FakeAccurevServer extends AccurevLauncherDecorator {
+
+    private final Map<String, Stream> streams = new LinkedHashMap<>();
+    private final List<Transaction> transactions = new ArrayList<>();
+    /**
+     * The transactions of every stream, in order.
+     */
+    private final Map<String, List<Transaction>> transactionsByStream = new HashMap<>();
+    /**
+     * Commands only read the model and run concurrently, changes to the model are exclusive.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> invocations = new ConcurrentHashMap<>();
+    private volatile boolean sessionExpired;
+
+    /**
+     * Adds a depot with its root stream.
+     *
+     * @param name the name of the depot and root stream.
+     * @return this.
+     */
+    public FakeAccurevServer depot(@NonNull String name) {
+        lock.writeLock().lock();
+        try {
+            streams.put(name, new Stream(name, name, streams.size() + 1, null, "normal"));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Adds a stream.
+     *
+     * @param name  the name.
+     * @param basis the basis stream, it has to exist.
+     * @param type  the type, e.g. {@code normal}, {@code workspace} or {@code staging}.
+     * @return this.
+     */
+    public FakeAccurevServer stream(@NonNull String name, @NonNull String basis, @NonNull String type) {
+        lock.writeLock().lock();
+        try {
+            Stream parent = streams.get(basis);
+            if (parent == null) {
+                throw new IllegalArgumentException("No stream " + basis);
+            }
+            streams.put(name, new Stream(name, parent.depot, streams.size() + 1, parent, type));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Promotes file contents to a stream.
+     *
+     * @param stream  the stream.
+     * @param user    the user.
+     * @param comment the comment.
+     * @param files   the contents by path, relative to the root of the stream.
+     * @return the id of the transaction.
+     */
+    public long promote(@NonNull String stream, @NonNull String user, @NonNull String comment,
+                        @NonNull Map<String, String> files) {
+        lock.writeLock().lock();
+        try {
+            Stream s = streams.get(stream);
+            if (s == null) {
+                throw new IllegalArgumentException("No stream " + stream);
+            }
+            long id = transactions.size() + 1;
+            Transaction t = new Transaction(id, s, user, comment, System.currentTimeMillis(), new ArrayList<>(files.keySet()));
+            transactions.add(t);
+            transactionsByStream.computeIfAbsent(stream, k -> new ArrayList<>()).add(t);
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                s.files.computeIfAbsent(e.getKey(), k -> new TreeMap<>()).put(id, e.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the last transaction, {@code 0} if there is none.
+     */
+    public long getLastTransaction() {
+        lock.readLock().lock();
+        try {
+            return transactions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delays every invocation of a command.
+     *
+     * @param command the command, e.g. {@code hist}.
+     * @param millis  the latency in milliseconds.
+     */
+    public void setLatency(@NonNull String command, long millis) {
+        latencies.put(command, millis);
+    }
+
+    /**
+     * Ends the session, every command but {@code login}, {@code logout} and {@code info} fails as not logged in until
+     * the next {@code login}.
+     */
+    public void expireSession() {
+        sessionExpired = true;
+    }
+
+    /**
+     * @param command the command.
+     * @return how often the command was run.
+     */
+    public int getInvocations(@NonNull String command) {
+        AtomicInteger count = invocations.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return how often each command was run.
+     */
+    @NonNull
+    public Map<String, Integer> getInvocations() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicInteger> e : invocations.entrySet()) {
+            counts.put(e.getKey(), e.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return the names of all streams, depots first.
+     */
+    @NonNull
+    public List<String> getStreams() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(streams.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Launcher decorate(@NonNull Launcher launcher) {
+        return new Launcher.DecoratedLauncher(launcher) {
+            @Override
+            public Proc launch(@NonNull ProcStarter starter) throws IOException {
+                List<String> cmds = starter.cmds();
+                if (!isAccurev(cmds)) {
+                    return super.launch(starter);
+                }
+                File pwd = starter.pwd() == null ? null : new File(starter.pwd().getRemote());
+                return new FakeProc(FakeAccurevServer.this, cmds.subList(1, cmds.size()), pwd, starter.stdout(), starter.stderr());
+            }
+        };
+    }
+
+    /**
+     * Runs a command against the model.
+     *
+     * @param args the arguments after {@code accurev}.
+     * @param pwd  the working directory, or {@code null}.
+     * @param out  the standard output.
+     * @param err  the standard error.
+     * @return the exit code.
+     * @throws IOException          if files could not be written.
+     * @throws InterruptedException if interrupted while simulating the latency.
+     */
+    public int run(@NonNull List<String> args, File pwd, @NonNull OutputStream out, @NonNull OutputStream err)
+            throws IOException, InterruptedException {
+        Args a = new Args(args);
+        invocations.computeIfAbsent(a.command, k -> new AtomicInteger()).incrementAndGet();
+        Long latency = latencies.get(a.command);
+        if (latency != null && latency > 0) {
+            TimeUnit.MILLISECONDS.sleep(latency);
+        }
+        PrintStream o = new PrintStream(out, true, "UTF-8");
+        PrintStream e = new PrintStream(err, true, "UTF-8");
+        if (a.command.equals("login")) {
+            sessionExpired = false;
+        } else if (sessionExpired && !a.command.equals("logout") && !a.command.equals("info")) {
+            e.println("You are not currently logged in. Use 'accurev login' to log in.");
+            return 1;
+        }
+        lock.readLock().lock();
+        try {
+            switch (a.command) {
+                case "login":
+                case "logout":
+                    return 0;
+                case "info":
+                    o.println("Principal:\tfake\nHost:\tlocalhost\nServer name:\tlocalhost\nPort:\t5050");
+                    return 0;
+                case "show":
+                    return show(a, o, e);
+                case "hist":
+                    return hist(a, o, e);
+                case "stat":
+                    return stat(a, o, e);
+                case "cat":
+                    return cat(a, out, e);
+                case "pop":
+                    return pop(a, pwd, e);
+                case "update":
+                    o.println("<AcResponse Command=\"update\"/>");
+                    return 0;
+                default:
+                    e.println("Unknown command: " + a.command);
+                    return 1;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int show(Args a, PrintStream o, PrintStream e) {
+        if (a.positional.contains("depots")) {
+            o.println("<AcResponse Command=\"show depots\">");
+            for (Stream s : streams.values()) {
+                if (s.basis == null) {
+                    o.println("  <Element Name=\"" + xml(s.name) + "\" Number=\"" + s.number + "\"/>");
+                }
+            }
+            o.println("</AcResponse>");
+            return 0;
+        }
+        String name = a.option("-s");
+        String depot = a.option("-p");
+        o.println("<streams>");
+        for (Stream s : streams.values()) {
+            boolean selected = name == null ? depot == null || s.depot.equals(depot)
+                    : s.name.equals(name) || (a.flags.contains("-r") && s.isBelow(name));
+            if (selected) {
+                o.println("  <stream name=\"" + xml(s.name) + "\" depotName=\"" + xml(s.depot) + "\" streamNumber=\""
+                        + s.number + "\"" + (s.basis == null ? "" : " basis=\"" + xml(s.basis.name)
+                        + "\" basisStreamNumber=\"" + s.basis.number + "\"") + " isDynamic=\"true\" type=\"" + s.type
+                        + "\" startTime=\"" + s.time + "\" time=\"" + s.time + "\"/>");
+            }
+        }
+        o.println("</streams>");
+        return 0;
+    }
+
+    private int hist(Args a, PrintStream o, PrintStream e) {
+        String name = a.option("-s");
+        String depot = a.option("-p");
+        long[] range = range(a.option("-t"));
+        o.println("<AcResponse Command=\"hist\">");
+        List<Transaction> candidates = name == null ? transactions
+                : transactionsByStream.getOrDefault(name, Collections.emptyList());
+        // Newest first, starting at the highest transaction of the range
+        List<Transaction> selected = new ArrayList<>();
+        for (int i = firstAfter(candidates, range[1]) - 1; i >= 0 && candidates.get(i).id >= range[0]; i--) {
+            Transaction t = candidates.get(i);
+            if (depot == null || t.stream.depot.equals(depot)) {
+                selected.add(t);
+                if (range[2] > 0 && selected.size() >= range[2]) {
+                    break;
+                }
+            }
+        }
+        for (Transaction t : selected) {
+            o.println("  <transaction id=\"" + t.id + "\" type=\"promote\" time=\"" + t.time / 1000 + "\" user=\""
+                    + xml(t.user) + "\" streamName=\"" + xml(t.stream.name) + "\">");
+            o.println("    <comment>" + xml(t.comment) + "</comment>");
+            for (String path : t.paths) {
+                o.println("    <version path=\"/./" + xml(path) + "\" virtual=\"" + t.stream.number + "/" + t.id
+                        + "\" real=\"" + t.stream.number + "/" + t.id + "\"/>");
+            }
+            o.println("  </transaction>");
+        }
+        o.println("</AcResponse>");
+        return 0;
+    }
+
+    /**
+     * @return the index of the first transaction with an id above the given one, in a list ordered by id.
+     */
+    private static int firstAfter(List<Transaction> transactions, long id) {
+        int low = 0;
+        int high = transactions.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (transactions.get(mid).id <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the lowest and highest transaction and the maximum of transactions for a time spec like {@code now},
+     * {@code now.5}, {@code 42}, {@code 42.1} or {@code 50-42}.
+     */
+    private long[] range(String spec) {
+        long last = transactions.size();
+        if (spec == null || spec.equals("now") || spec.equals("highest")) {
+            return new long[]{0, last, 0};
+        }
+        String s = spec;
+        long count = 0;
+        int dot = s.indexOf('.');
+        if (dot > 0) {
+            count = Long.parseLong(s.substring(dot + 1));
+            s = s.substring(0, dot);
+        }
+        int dash = s.indexOf('-');
+        if (dash > 0) {
+            long from = id(s.substring(0, dash), last);
+            long to = id(s.substring(dash + 1), last);
+            return new long[]{Math.min(from, to), Math.max(from, to), count};
+        }
+        return new long[]{0, id(s, last), count};
+    }
+
+    private static long id(String spec, long last) {
+        return spec.equals("now") || spec.equals("highest") ? last : Long.parseLong(spec);
+    }
+
+    private int stat(Args a, PrintStream o, PrintStream e) {
+        Stream s = streams.get(a.option("-s"));
+        if (s == null) {
+            e.println("Unknown stream: " + a.option("-s"));
+            return 1;
+        }
+        long txn = range(a.option("-t"))[1];
+        o.println("<AcResponse Command=\"stat\">");
+        for (Map.Entry<String, String> version : s.versions(txn).entrySet()) {
+            o.println("  <element location=\"/./" + xml(version.getKey()) + "\" dir=\"no\" status=\"(backed)\" Real=\""
+                    + version.getValue() + "\"/>");
+        }
+        o.println("</AcResponse>");
+        return 0;
+    }
+
+    private int cat(Args a, OutputStream out, PrintStream e) throws IOException {
+        Stream s = streams.get(a.option("-v"));
+        if (s == null || a.positional.isEmpty()) {
+            e.println("Unknown stream or no element given");
+            return 1;
+        }
+        byte[] content = s.view(range(a.option("-t"))[1]).get(strip(a.positional.get(0)));
+        if (content == null) {
+            e.println("Element not found: " + a.positional.get(0));
+            return 1;
+        }
+        out.write(content);
+        return 0;
+    }
+
+    private int pop(Args a, File pwd, PrintStream e) throws IOException {
+        Stream s = streams.get(a.option("-v"));
+        String location = a.option("-L");
+        File dir = location != null ? new File(location) : pwd;
+        if (s == null || dir == null) {
+            e.println("Unknown stream or no location given");
+            return 1;
+        }
+        Map<String, byte[]> view = s.view(range(a.option("-t"))[1]);
+        for (Map.Entry<String, byte[]> entry : view.entrySet()) {
+            for (String element : a.positional) {
+                String p = strip(element);
+                if (p.isEmpty() || entry.getKey().equals(p) || entry.getKey().startsWith(p + "/")) {
+                    File file = new File(dir, entry.getKey());
+                    Files.createDirectories(file.getParentFile().toPath());
+                    Files.write(file.toPath(), entry.getValue());
+                    break;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static String strip(String element) {
+        String p = element.replace('\\', '/');
+        if (p.equals("/.") || p.equals(".")) {
+            return "";
+        }
+        return p.startsWith("/./") ? p.substring(3) : p;
+    }
+
+    private static String xml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static final class Stream {
+        private final String name;
+        private final String depot;
+        private final int number;
+        private final Stream basis;
+        private final String type;
+        private final long time = System.currentTimeMillis() / 1000;
+        /**
+         * The versions promoted to this stream, by path and transaction.
+         */
+        private final Map<String, TreeMap<Long, byte[]>> files = new TreeMap<>();
+
+        private Stream(String name, String depot, int number, Stream basis, String type) {
+            this.name = name;
+            this.depot = depot;
+            this.number = number;
+            this.basis = basis;
+            this.type = type;
+        }
+
+        private boolean isBelow(String ancestor) {
+            for (Stream s = basis; s != null; s = s.basis) {
+                if (s.name.equals(ancestor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the content of the stream at a transaction, versions of the stream override those of its basis.
+         */
+        private Map<String, byte[]> view(long txn) {
+            Map<String, byte[]> view = basis == null ? new TreeMap<>() : basis.view(txn);
+            for (Map.Entry<String, TreeMap<Long, byte[]>> e : files.entrySet()) {
+                Map.Entry<Long, byte[]> version = e.getValue().floorEntry(txn);
+                if (version != null) {
+                    view.put(e.getKey(), version.getValue());
+                }
+            }
+            return view;
+        }
+
+        /**
+         * @return the real version of every element of the stream at a transaction, as stream number and transaction.
+         */
+        private Map<String, String> versions(long txn) {
+            Map<String, String> versions = basis == null ? new TreeMap<>() : basis.versions(txn);
+            for (Map.Entry<String, TreeMap<Long, byte[]>> e : files.entrySet()) {
+                Long version = e.getValue().floorKey(txn);
+                if (version != null) {
+                    versions.put(e.getKey(), number + "/" + version);
+                }
+            }
+            return versions;
+        }
+    }
+
+    private static final class Transaction {
+        private final long id;
+        private final Stream stream;
+        private final String user;
+        private final String comment;
+        private final long time;
+        private final List<String> paths;
+
+        private Transaction(long id, Stream stream, String user, String comment, long time, List<String> paths) {
+            this.id = id;
+            this.stream = stream;
+            this.user = user;
+            this.comment = comment;
+            this.time = time;
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * The arguments of a command, options with a value, flags and positional arguments.
+     */
+    private static final class Args {
+        private static final List<String> WITH_VALUE = Arrays.asList(
+                "-H", "-p", "-s", "-v", "-t", "-k", "-L", "-e", "-u", "-c");
+        private final String command;
+        private final Map<String, String> options = new LinkedHashMap<>();
+        private final List<String> flags = new ArrayList<>();
+        private final List<String> positional = new ArrayList<>();
+
+        private Args(List<String> args) {
+            String cmd = null;
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (WITH_VALUE.contains(arg) && i + 1 < args.size()) {
+                    options.put(arg, args.get(++i));
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    flags.add(arg);
+                } else if (cmd == null) {
+                    cmd = arg;
+                } else {
+                    positional.add(arg);
+                }
+            }
+            command = cmd == null ? "" : cmd;
+        }
+
+        private String option(String name) {
+            return options.get(name);
+        }
+    }
+
+    private static final class FakeProc extends Proc {
+        private final int exitCode;
+        private final InputStream stdout;
+        private final InputStream stderr;
+
+        private FakeProc(FakeAccurevServer server, List<String> args, File pwd, OutputStream out, OutputStream err) throws IOException {
+            ByteArrayOutputStream bufferOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream bufferErr = new ByteArrayOutputStream();
+            try {
+                exitCode = server.run(args, pwd, out != null ? out : bufferOut, err != null ? err : bufferErr);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            // Callers reading the output through pipes have no stream set on the starter
+            stdout = new ByteArrayInputStream(bufferOut.toByteArray());
+            stderr = new ByteArrayInputStream(bufferErr.toByteArray());
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+
+        @Override
+        public void kill() {
+        }
+
+        @Override
+        public int join() {
+            return exitCode;
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return stderr;
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return new ByteArrayOutputStream();
+        }
+    }
+}
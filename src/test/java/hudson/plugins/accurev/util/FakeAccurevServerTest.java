@@ -0,0 +1,88 @@
+package hudson.plugins.accurev.util;
+
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.TaskListener;
+import jenkins.plugins.accurev.AccurevPathTrie;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class FakeAccurevServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeAccurevServer server;
+    private Launcher launcher;
+
+    @Before
+    public void setUp() {
+        server = new FakeAccurevServer().depot("depot").stream("dev", "depot", "normal");
+        server.promote("depot", "alice", "initial", Collections.singletonMap("README", "v1"));
+        server.promote("dev", "bob", "work", Collections.singletonMap("src/Foo.java", "class Foo {}"));
+        server.promote("depot", "alice", "update", Collections.singletonMap("README", "v2"));
+        launcher = server.decorate(new Launcher.LocalLauncher(TaskListener.NULL));
+    }
+
+    private String run(String... args) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = launcher.launch().cmds(args).stdout(out).join();
+        assertEquals(0, exitCode);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStatListsTheInheritedViewAtATransaction() throws Exception {
+        Proc proc = launcher.launch().cmds("accurev", "stat", "-s", "dev", "-t", "2", "-a", "-fx").readStdout().start();
+        AccurevPathTrie listing = AccurevPathTrie.parse(proc.getStdout());
+        assertEquals(0, proc.join());
+        assertThat(listing.list(""), contains("README", "src"));
+        assertThat(listing.list("src"), contains("Foo.java"));
+    }
+
+    @Test
+    public void testCatAndPopServeContentAtATransaction() throws Exception {
+        assertEquals("v1", run("accurev", "cat", "-v", "dev", "-t", "2", "/./README"));
+        assertEquals("v2", run("accurev", "cat", "-v", "dev", "-t", "3", "/./README"));
+        File dir = folder.newFolder();
+        run("accurev", "pop", "-v", "dev", "-t", "3", "-L", dir.getPath(), "-O", "-R", "/./src");
+        assertEquals("class Foo {}", new String(Files.readAllBytes(new File(dir, "src/Foo.java").toPath()), StandardCharsets.UTF_8));
+        assertEquals(false, new File(dir, "README").exists());
+    }
+
+    @Test
+    public void testHistListsTheTransactionsOfAStream() throws Exception {
+        String hist = run("accurev", "hist", "-p", "depot", "-s", "depot", "-t", "now.1", "-fx");
+        assertThat(hist, containsString("id=\"3\""));
+        assertThat(hist, not(containsString("id=\"1\"")));
+    }
+
+    @Test
+    public void testLatencyAndInvocationsArePerCommand() throws Exception {
+        server.setLatency("show", 200);
+        long start = System.nanoTime();
+        String streams = run("accurev", "show", "-p", "depot", "-fx", "streams");
+        assertThat((System.nanoTime() - start) / 1000000, greaterThanOrEqualTo(200L));
+        assertThat(streams, containsString("basis=\"depot\""));
+        assertEquals(1, server.getInvocations("show"));
+        assertEquals(1, launcher.launch().cmds("accurev", "update").join());
+        assertThat(IOUtils.toString(launcher.launch().cmds("accurev", "info").readStdout().start().getStdout(),
+                StandardCharsets.UTF_8), containsString("Server name"));
+    }
+}
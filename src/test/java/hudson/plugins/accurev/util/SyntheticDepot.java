@@ -0,0 +1,113 @@
+package hudson.plugins.accurev.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates large depot models on a {@link FakeAccurevServer}, for scalability scenarios.
+ * <p>
+ * The streams form a tree below the depot stream with exactly {@code depth} levels, every level has at least one
+ * stream and the remaining streams get a random parent above the last level. The depot stream starts with a
+ * {@code Jenkinsfile} inherited by every stream, then the transactions promote one to three files, out of a fixed set
+ * of paths, to random streams. A seed makes every model reproducible.
+ */
+public final class SyntheticDepot {
+
+    public static final String DEPOT = "depot";
+    private static final int PATHS = 1000;
+
+    private final int streams;
+    private final int depth;
+    private final int transactions;
+    private final long seed;
+
+    /**
+     * @param streams      the number of streams below the depot stream.
+     * @param depth        the number of levels of the stream tree.
+     * @param transactions the number of transactions.
+     * @param seed         the seed of the random choices.
+     */
+    public SyntheticDepot(int streams, int depth, int transactions, long seed) {
+        if (streams < depth || depth < 1) {
+            throw new IllegalArgumentException("Need at least one stream per level");
+        }
+        this.streams = streams;
+        this.depth = depth;
+        this.transactions = transactions;
+        this.seed = seed;
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return the name of the i-th generated stream.
+     */
+    public static String streamName(int i) {
+        return "stream" + i;
+    }
+
+    /**
+     * Builds the model.
+     *
+     * @return a new server serving the model.
+     */
+    @NonNull
+    public FakeAccurevServer generate() {
+        Random random = new Random(seed);
+        FakeAccurevServer server = new FakeAccurevServer().depot(DEPOT);
+        List<List<String>> levels = new ArrayList<>();
+        String parent = DEPOT;
+        for (int level = 0; level < depth; level++) {
+            String name = streamName(level);
+            server.stream(name, parent, "normal");
+            List<String> streamsOfLevel = new ArrayList<>();
+            streamsOfLevel.add(name);
+            levels.add(streamsOfLevel);
+            parent = name;
+        }
+        for (int i = depth; i < streams; i++) {
+            int level = random.nextInt(depth);
+            String basis = level == 0 ? DEPOT : pick(levels.get(level - 1), random);
+            String name = streamName(i);
+            server.stream(name, basis, "normal");
+            levels.get(level).add(name);
+        }
+        List<String> all = server.getStreams();
+        server.promote(DEPOT, "user0", "pipeline", Collections.singletonMap("Jenkinsfile", "node {}"));
+        for (int t = 1; t < transactions; t++) {
+            Map<String, String> files = new LinkedHashMap<>();
+            int count = 1 + random.nextInt(3);
+            for (int f = 0; f < count; f++) {
+                int path = random.nextInt(PATHS);
+                files.put("src/module" + (path % 50) + "/File" + path + ".java", "// version " + t);
+            }
+            server.promote(pick(all, random), "user" + random.nextInt(20), "change " + t, files);
+        }
+        return server;
+    }
+
+    private static String pick(List<String> names, Random random) {
+        return names.get(random.nextInt(names.size()));
+    }
+
+    @Override
+    public String toString() {
+        return streams + " streams, " + depth + " levels, " + transactions + " transactions";
+    }
+}
@@ -0,0 +1,88 @@
+package jenkins.plugins.accurev;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AccurevContentCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        AccurevContentCache cache = new AccurevContentCache(folder.newFolder("cache"), 80);
+        put(cache, "a", new byte[10]);
+        put(cache, "b", new byte[10]);
+        cache.get("a");
+        for (int i = 0; i < 7; i++) {
+            put(cache, "c" + i, new byte[10]);
+        }
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(80, cache.size());
+    }
+
+    @Test
+    public void testBinaryContentIsReadBackUnchanged() throws Exception {
+        AccurevContentCache cache = new AccurevContentCache(folder.newFolder("cache"), 1024);
+        byte[] content = new byte[256];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        File file = put(cache, "binary", content);
+        try (InputStream in = AccurevContentCache.open(file)) {
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testOpenedContentSurvivesEviction() throws Exception {
+        AccurevContentCache cache = new AccurevContentCache(folder.newFolder("cache"), 20);
+        byte[] content = new byte[10];
+        Arrays.fill(content, (byte) 'a');
+        put(cache, "a", content);
+        try (InputStream in = cache.open("a")) {
+            assertNotNull(in);
+            put(cache, "b", new byte[10]);
+            put(cache, "c", new byte[10]);
+            assertNull(cache.get("a"));
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+        assertNull(cache.open("a"));
+    }
+
+    @Test
+    public void testReplacedContentGetsANewFile() throws Exception {
+        AccurevContentCache cache = new AccurevContentCache(folder.newFolder("cache"), 1024);
+        File first = put(cache, "a", new byte[]{1});
+        try (InputStream in = cache.open("a")) {
+            File second = put(cache, "a", new byte[]{2});
+            assertNotEquals(first, second);
+            assertEquals(1, in.read());
+        }
+        try (InputStream in = cache.open("a")) {
+            assertEquals(2, in.read());
+        }
+        assertEquals(1, cache.size());
+    }
+
+    private static File put(AccurevContentCache cache, String key, byte[] content) throws IOException {
+        File tmp = cache.newTempFile();
+        Files.write(tmp.toPath(), content);
+        return cache.put(key, tmp);
+    }
+}
@@ -0,0 +1,119 @@
+package jenkins.plugins.accurev;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.AbortException;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccurevLibraryRetrieverTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeAccurevServer server;
+    private FreeStyleBuild build;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeAccurevServer();
+        ExtensionList.lookup(AccurevLauncherDecorator.class).add(server);
+        SystemCredentialsProvider.getInstance().getCredentials().add(
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "accurev", "Accurev", "user", "password"));
+        build = r.buildAndAssertSuccess(r.createFreeStyleProject());
+    }
+
+    private void library(String depot) {
+        server.depot(depot).promote(depot, "alice", "library", Collections.singletonMap("vars/hello.groovy", "def call() {}"));
+    }
+
+    private FilePath retrieve(String version, String credentialsId) throws Exception {
+        FilePath target = new FilePath(folder.newFolder());
+        new AccurevLibraryRetriever(new AccurevSCMSource("lib", "localhost", "5050", version, credentialsId))
+                .retrieve("lib", version, target, build, TaskListener.NULL);
+        return target;
+    }
+
+    @Test
+    public void testLoadsLibrary() throws Exception {
+        library("lib-load");
+        FilePath target = retrieve("lib-load", "accurev");
+        assertEquals("def call() {}", target.child("vars/hello.groovy").readToString());
+        assertEquals(1, server.getInvocations("pop"));
+    }
+
+    @Test
+    public void testLoadsLibraryFromCache() throws Exception {
+        library("lib-cache");
+        retrieve("lib-cache", "accurev");
+        FilePath target = retrieve("lib-cache", "accurev");
+        assertEquals("def call() {}", target.child("vars/hello.groovy").readToString());
+        assertEquals(1, server.getInvocations("pop"));
+        assertEquals(0, server.getInvocations("cat"));
+    }
+
+    @Test
+    public void testMissingCredentialsFailWithoutCaching() throws Exception {
+        library("lib-nocreds");
+        try {
+            retrieve("lib-nocreds", "missing");
+            fail("no credentials to read the library with");
+        } catch (AbortException e) {
+            assertThat(e.getMessage(), containsString("no credentials"));
+        }
+        File[] cached = AccurevLibraryRetriever.getCacheDir().listFiles();
+        assertFalse(cached != null && cached.length > 0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedLibraries() throws Exception {
+        int maxEntries = AccurevLibraryRetriever.MAX_ENTRIES;
+        long minIdleMillis = AccurevLibraryRetriever.MIN_IDLE_MILLIS;
+        try {
+            AccurevLibraryRetriever.MAX_ENTRIES = 1;
+            library("lib-old");
+            library("lib-new");
+            retrieve("lib-old", "accurev");
+            assertThat(AccurevLibraryRetriever.getCacheDir().listFiles(), arrayWithSize(1));
+            retrieve("lib-new", "accurev");
+            // Used too recently to be evicted
+            assertThat(AccurevLibraryRetriever.getCacheDir().listFiles(), arrayWithSize(2));
+            AccurevLibraryRetriever.MIN_IDLE_MILLIS = 0;
+            for (File library : AccurevLibraryRetriever.getCacheDir().listFiles()) {
+                assertTrue(library.setLastModified(System.currentTimeMillis() - 60000));
+            }
+            library("lib-third");
+            FilePath target = retrieve("lib-third", "accurev");
+            assertThat(AccurevLibraryRetriever.getCacheDir().listFiles(), arrayWithSize(1));
+            assertEquals("def call() {}", target.child("vars/hello.groovy").readToString());
+            assertEquals(3, server.getInvocations("pop"));
+        } finally {
+            AccurevLibraryRetriever.MAX_ENTRIES = maxEntries;
+            AccurevLibraryRetriever.MIN_IDLE_MILLIS = minIdleMillis;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package jenkins.plugins.accurev;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AccurevPathTrieTest {
+
+    private static final String LISTING = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<AcResponse Command=\"stat\" TaskId=\"42\">\n" +
+            "  <element location=\"/./src/main/Foo.java\" dir=\"no\" status=\"(backed)\"/>\n" +
+            "  <element location=\"/./src\" dir=\"yes\" status=\"(backed)\"/>\n" +
+            "  <element location=\"/./src/main\" dir=\"yes\" status=\"(backed)\"/>\n" +
+            "  <element location=\"/./Jenkinsfile\" dir=\"no\" status=\"(backed)\"/>\n" +
+            "  <element location=\"/./src/main/Bar.java\" dir=\"no\" status=\"(backed)\"/>\n" +
+            "  <element location=\"/./old.txt\" dir=\"no\" status=\"(defunct)\"/>\n" +
+            "</AcResponse>\n";
+
+    private static AccurevPathTrie parse() throws Exception {
+        return AccurevPathTrie.parse(new ByteArrayInputStream(LISTING.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testListsChildrenInOrder() throws Exception {
+        AccurevPathTrie trie = parse();
+        assertThat(trie.list(""), contains("Jenkinsfile", "src"));
+        assertThat(trie.list("src/main"), contains("Bar.java", "Foo.java"));
+        assertThat(trie.list("src/main/Foo.java"), empty());
+        assertThat(trie.list("missing"), empty());
+    }
+
+    @Test
+    public void testResolvesTypes() throws Exception {
+        AccurevPathTrie trie = parse();
+        assertTrue(trie.isDirectory("src"));
+        assertTrue(trie.isDirectory("/./src/main"));
+        assertFalse(trie.isDirectory("Jenkinsfile"));
+        assertTrue(trie.exists("Jenkinsfile"));
+        assertFalse(trie.exists("old.txt"));
+        assertFalse(trie.exists("src/Foo.java"));
+    }
+}
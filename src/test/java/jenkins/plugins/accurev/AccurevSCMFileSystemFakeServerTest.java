@@ -0,0 +1,91 @@
+package jenkins.plugins.accurev;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.EnvVars;
+import hudson.ExtensionList;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import jenkins.plugins.accurevclient.Accurev;
+import jenkins.plugins.accurevclient.AccurevClient;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link AccurevSCMFileSystem} against a {@link FakeAccurevServer}.
+ */
+public class AccurevSCMFileSystemFakeServerTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    private FakeAccurevServer server;
+
+    @Before
+    public void setUp() {
+        server = new FakeAccurevServer();
+        ExtensionList.lookup(AccurevLauncherDecorator.class).add(server);
+    }
+
+    private AccurevSCMFileSystem fileSystem(String depot) {
+        Map<String, String> files = new HashMap<>();
+        files.put("Jenkinsfile", "node {}");
+        files.put("README", "v1");
+        files.put("docs/a.txt", "a");
+        files.put("docs/b.txt", "b");
+        server.depot(depot).promote(depot, "alice", "initial", files);
+        AccurevClient client = Accurev.with(TaskListener.NULL, new EnvVars(),
+                AccurevLauncherDecorator.decorateAll(new Launcher.LocalLauncher(TaskListener.NULL)))
+                .on("localhost:5050").getClient();
+        client.setCredentials(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "accurev", null, "user", "password"));
+        return new AccurevSCMFileSystem(client, "localhost:5050", depot,
+                new AccurevSCMSource.SCMRevisionImpl(new AccurevSCMHead(depot), server.getLastTransaction()));
+    }
+
+    private static String read(AccurevSCMFileSystem fs, String path) throws Exception {
+        try (InputStream in = fs.open(path)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testLogsInAgainOnceTheSessionExpired() throws Exception {
+        AccurevSCMFileSystem fs = fileSystem("session");
+        assertEquals("v1", read(fs, "README"));
+        assertEquals(1, server.getInvocations("login"));
+        server.expireSession();
+        assertEquals("a", read(fs, "docs/a.txt"));
+        assertEquals(2, server.getInvocations("login"));
+        assertEquals("b", read(fs, "docs/b.txt"));
+        assertEquals(2, server.getInvocations("login"));
+    }
+
+    @Test
+    public void testPrefetchPopulatesOnceInsteadOfReadingEveryFile() throws Exception {
+        AccurevSCMFileSystem fs = fileSystem("prefetch");
+        fs.prefetch(Arrays.asList("docs", "README"));
+        assertEquals(1, server.getInvocations("pop"));
+        assertEquals("a", read(fs, "docs/a.txt"));
+        assertEquals("b", read(fs, "docs/b.txt"));
+        assertEquals("v1", read(fs, "README"));
+        assertEquals(0, server.getInvocations("cat"));
+        fs.prefetch(Collections.singletonList("README"));
+        assertEquals(1, server.getInvocations("pop"));
+        assertEquals("node {}", read(fs, "Jenkinsfile"));
+        assertEquals(1, server.getInvocations("cat"));
+    }
+}
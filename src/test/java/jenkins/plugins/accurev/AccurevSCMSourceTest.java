@@ -1,9 +1,24 @@
 package jenkins.plugins.accurev;
 
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.ExtensionList;
 import hudson.model.Item;
 import hudson.model.TopLevelItem;
+import hudson.plugins.accurev.AccurevEventJournal;
+import hudson.plugins.accurev.AccurevLauncherDecorator;
 import hudson.plugins.accurev.AccurevStatus;
+import hudson.plugins.accurev.util.CommandBudget;
+import hudson.plugins.accurev.util.FakeAccurevServer;
+import jenkins.branch.BranchProperty;
+import jenkins.branch.BranchSource;
+import jenkins.branch.DefaultBranchPropertyStrategy;
+import jenkins.branch.NoTriggerBranchProperty;
+import jenkins.plugins.accurev.traits.BuildItemsDiscoveryTrait;
 import jenkins.scm.api.*;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -18,6 +33,7 @@ import java.util.concurrent.TimeoutException;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.hamcrest.Matchers.is;
 
@@ -30,11 +46,17 @@ public class AccurevSCMSourceTest {
     @Rule
     public JenkinsRule jenkins = new JenkinsRule();
 
+    @Rule
+    public CommandBudget budget = new CommandBudget();
+
 
     private AccurevStatus accurevStatus;
+    private FakeAccurevServer server;
 
     @Before
-    public void setup() { accurevStatus = new AccurevStatus(); }
+    public void setup() {
+        accurevStatus = new AccurevStatus();
+    }
 
     @Test
     public void testSourceOwnerTriggeredByDoNotifyCommit() throws Exception {
@@ -54,6 +76,92 @@ public class AccurevSCMSourceTest {
         verify(scmSourceOwner, times(0)).onSCMSourceUpdated(accurevSCMSource);
     }
 
+    @Test
+    public void testIndexingCommandBudget() throws Exception {
+        WorkflowMultiBranchProject project = project("indexing", "indexing-a", "indexing-b");
+        budget.start();
+
+        index(project);
+
+        // One login and listing of the streams, then the newest transaction, the session and the Jenkinsfile of every
+        // stream
+        assertThat(project.getItems().size(), is(3));
+        budget.assertAtMost("login", 1);
+        budget.assertAtMost(2 + 3 * 3);
+    }
+
+    @Test
+    public void testEventIndexingCommandBudget() throws Exception {
+        WorkflowMultiBranchProject project = project("events", "events-a", "events-b");
+        index(project);
+        assertThat(project.getItem("events-a"), notNullValue());
+        long transaction = server.promote("events-a", "alice", "change", Collections.singletonMap("a.txt", "a"));
+        budget.start();
+
+        accurevStatus.doNotifyCommit(mock(HttpServletRequest.class), "localhost", "5050", "events-a",
+                Long.toString(transaction), "alice", "Updated");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!AccurevEventJournal.get().getPending().isEmpty()) {
+            assertTrue("The event was not handled in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        jenkins.waitUntilNoActivity();
+
+        // The event carries the transaction, only the changed stream is listed and probed
+        budget.assertAtMost("hist", 0);
+        budget.assertAtMost(4);
+    }
+
+    @Test
+    public void testCheckoutCommandBudget() throws Exception {
+        WorkflowMultiBranchProject project = project("checkout");
+        index(project);
+        WorkflowJob job = project.getItem("checkout");
+        assertThat(job, notNullValue());
+        budget.start();
+
+        jenkins.buildAndAssertSuccess(job);
+
+        // Reading the Jenkinsfile and checking out each log in once, the workspace is populated once
+        budget.assertAtMost("login", 2);
+        budget.assertAtMost("update", 1);
+        budget.assertAtMost("pop", 1);
+        budget.assertAtMost(10);
+    }
+
+    /**
+     * @return a multibranch project discovering the streams of a new depot on the fake server, whose branch jobs are
+     * not built automatically.
+     */
+    private WorkflowMultiBranchProject project(String depot, String... streams) throws Exception {
+        installServer();
+        server.depot(depot).promote(depot, "alice", "pipeline", Collections.singletonMap("Jenkinsfile", "node { checkout scm }"));
+        for (String stream : streams) {
+            server.stream(stream, depot, "normal");
+        }
+        AccurevSCMSource source = new AccurevSCMSource("source", "localhost", "5050", depot, "accurev");
+        source.setTraits(Collections.singletonList(new BuildItemsDiscoveryTrait(true, false, false, false, false, false)));
+        WorkflowMultiBranchProject project = jenkins.createProject(WorkflowMultiBranchProject.class, depot);
+        project.getSourcesList().add(new BranchSource(source,
+                new DefaultBranchPropertyStrategy(new BranchProperty[]{new NoTriggerBranchProperty()})));
+        return project;
+    }
+
+    /**
+     * Serves the accurev commands of the test from a fake server, logged in with global credentials.
+     */
+    private void installServer() {
+        server = new FakeAccurevServer();
+        ExtensionList.lookup(AccurevLauncherDecorator.class).add(server);
+        SystemCredentialsProvider.getInstance().getCredentials().add(
+                new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "accurev", "Accurev", "user", "password"));
+    }
+
+    private void index(WorkflowMultiBranchProject project) throws Exception {
+        project.scheduleBuild2(0).getFuture().get();
+        jenkins.waitUntilNoActivity();
+    }
+
     private AccurevSCMSourceOwner setupAccurevSCMSourceOwner(AccurevSCMSource accurevSCMSource) {
         AccurevSCMSourceOwner owner = mock(AccurevSCMSourceOwner.class);
         when(owner.hasPermission(Item.READ)).thenReturn(true, true, true);